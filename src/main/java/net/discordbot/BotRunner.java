@@ -6,6 +6,7 @@ import net.discordbot.bots.ReactBot;
 import net.discordbot.bots.SimpleBot;
 import net.discordbot.core.DiscordListener;
 import net.discordbot.util.Config;
+import net.discordbot.util.ConfigWatcher;
 import net.dv8tion.jda.core.AccountType;
 import net.dv8tion.jda.core.JDABuilder;
 
@@ -17,7 +18,8 @@ public final class BotRunner {
   private BotRunner() {}
 
   public static void main(String[] args) throws Exception {
-    Config cfg = Config.create(CONFIG_FILE_PATH);
+    ConfigWatcher config = new ConfigWatcher(CONFIG_FILE_PATH);
+    Config cfg = config.get();
 
     // Add all DiscordBots to the listener. Bots that are listed earlier have higher priority.
     DiscordListener listener = new DiscordListener(cfg)
@@ -25,6 +27,8 @@ public final class BotRunner {
         .addBot(new MusicBot())
         .addBot(new ConversionBot())
         .addBot(new SimpleBot());
+    config.addListener(listener::updateConfig);
+    config.start(listener::logException);
 
     new JDABuilder(AccountType.BOT)
         .setToken(cfg.getToken())
@@ -0,0 +1,82 @@
+package net.discordbot.bots;
+
+import com.google.common.base.Verify;
+
+import java.util.Random;
+
+/**
+ * Picks indices with a probability proportional to their weights in constant time, using Vose's
+ * alias method. A table takes linear time to build and never changes afterwards.
+ */
+final class AliasTable {
+
+  static final int NONE = -1;
+
+  /** The chance of keeping the index that was rolled rather than taking its alias. */
+  private final double[] probability;
+
+  private final int[] alias;
+
+  private final double meanWeight;
+
+  AliasTable(double[] weights) {
+    int size = weights.length;
+    Verify.verify(size > 0, "Alias table has no weights");
+    double total = 0;
+    for (double weight : weights) {
+      Verify.verify(weight >= 0, "Weight %s is negative", weight);
+      total += weight;
+    }
+    meanWeight = total / size;
+    probability = new double[size];
+    alias = new int[size];
+
+    // Split the indices into those below and those above the mean, then pair them up.
+    double[] scaled = new double[size];
+    int[] small = new int[size];
+    int[] large = new int[size];
+    int smallCount = 0;
+    int largeCount = 0;
+    for (int i = 0; i < size; i++) {
+      scaled[i] = total > 0 ? weights[i] * size / total : 1;
+      if (scaled[i] < 1) {
+        small[smallCount++] = i;
+      } else {
+        large[largeCount++] = i;
+      }
+    }
+    while (smallCount > 0 && largeCount > 0) {
+      int less = small[--smallCount];
+      int more = large[--largeCount];
+      probability[less] = scaled[less];
+      alias[less] = more;
+      scaled[more] += scaled[less] - 1;
+      if (scaled[more] < 1) {
+        small[smallCount++] = more;
+      } else {
+        large[largeCount++] = more;
+      }
+    }
+    // Whatever is left is at the mean, up to rounding errors.
+    while (largeCount > 0) {
+      probability[large[--largeCount]] = 1;
+    }
+    while (smallCount > 0) {
+      probability[small[--smallCount]] = 1;
+    }
+  }
+
+  int sample(Random random) {
+    int index = random.nextInt(probability.length);
+    return random.nextDouble() < probability[index] ? index : alias[index];
+  }
+
+  /**
+   * Treats the weights as chances of at most 1 and returns an index, or NONE with a probability of
+   * one minus the mean chance. Each index is returned with its chance divided by the size, exactly
+   * like picking a uniform index and then rolling for its chance.
+   */
+  int roll(Random random) {
+    return random.nextDouble() < meanWeight ? sample(random) : NONE;
+  }
+}
@@ -1,20 +1,32 @@
 package net.discordbot.bots;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import net.discordbot.common.BasicCommand;
 import net.discordbot.common.DiscordBot;
+import net.discordbot.common.MessageInterest;
+import net.discordbot.common.ParsedMessage;
 import net.discordbot.common.TextListener;
 import net.discordbot.util.Config;
 import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.entities.Message;
 import net.dv8tion.jda.core.entities.User;
-import org.jscience.physics.amount.Amount;
 
+import java.text.ParsePosition;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.measure.converter.RationalConverter;
+import javax.measure.converter.UnitConverter;
 import javax.measure.unit.Unit;
 import javax.measure.unit.UnitFormat;
 
@@ -27,8 +39,19 @@ public class ConversionBot extends DiscordBot implements TextListener {
 
   private static final String UNIT = "[a-zA-Z]*[.a-zA-Z]?[a-zA-Z]+";
 
+  /**
+   * Matches quantities that are surrounded by whitespace or by the ends of the message. A match
+   * consumes the whitespace after it, so of two quantities separated by a single space only the
+   * first one is matched.
+   */
   private static final Pattern IS_UNIT =
-      Pattern.compile(String.format("\\s(%s)\\s*(%s)\\s", NUMBER, UNIT));
+      Pattern.compile(String.format("(?:^|\\s)(%s)\\s*(%s)(?:\\s|$)", NUMBER, UNIT));
+
+  /**
+   * Matches the unit symbols that are parsed, such as every UNIT or km/h. UnitFormat throws on some
+   * malformed units, like exponents that are too large, instead of reporting them.
+   */
+  private static final Pattern IS_UNIT_SYMBOL = Pattern.compile("[a-zA-Z./\\s]+");
 
   private static final String CONVERSION_FORMAT = "FYI %s is %.2f%s in non-retarded units";
 
@@ -44,7 +67,7 @@ public class ConversionBot extends DiscordBot implements TextListener {
           .build();
 
   /** Additional aliases to consider beyond the default ones from javax.measure. */
-  private static final ImmutableMultimap<Unit, String> CUSTOM_ALIASES =
+  static final ImmutableMultimap<Unit, String> CUSTOM_ALIASES =
       ImmutableMultimap.<Unit, String>builder()
           .putAll(INCH, "in", "inch", "inches")
           .putAll(FOOT, "ft", "foot", "feet")
@@ -62,6 +85,22 @@ public class ConversionBot extends DiscordBot implements TextListener {
   /** Classes of units that are to be ignored by the converter. */
   private static final ImmutableSet<Unit> UNITS_TO_IGNORE = ImmutableSet.of(SECOND);
 
+  /** The conversions of all custom aliases, resolved ahead of time. */
+  private static final ImmutableMap<String, Optional<Conversion[]>> ALIAS_CONVERSIONS =
+      resolveAliases();
+
+  private static final int MAX_CACHED_UNITS = 1024;
+
+  /** The conversions of other unit symbols, or empty if they are not converted. */
+  private static final Cache<String, Optional<Conversion[]>> UNIT_CONVERSIONS =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_UNITS).build();
+
+  private static final int MAX_CACHED_REPLIES = 1024;
+
+  /** The replies to recently seen quantities, or empty if they are not converted. */
+  private static final Cache<String, Optional<String>> REPLIES =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_REPLIES).build();
+
   @Override
   public void prepare(JDA jda, Config cfg) {
     super.prepare(jda, cfg);
@@ -69,72 +108,192 @@ public class ConversionBot extends DiscordBot implements TextListener {
   }
 
   @Override
-  public boolean parseMessage(Message message) {
+  public MessageInterest getInterest() {
+    // Every quantity starts with a number.
+    return MessageInterest.digits();
+  }
+
+  @Override
+  public boolean parseMessage(Message message, ParsedMessage parsed) {
     if (message.getAuthor() == satanName) {
       return false;
     }
-    Matcher matcher = IS_UNIT.matcher(" " + message.getContent() + " ");
-    boolean processed = false;
+    Set<String> replies = findReplies(parsed);
+    if (replies.isEmpty()) {
+      return false;
+    }
+    // Answer all quantities of the message at once.
+    reply(message, "%s", String.join("\n", replies)).soon();
+    return true;
+  }
+
+  /** Returns the distinct replies to the quantities in `parsed`, in order. */
+  static Set<String> findReplies(ParsedMessage parsed) {
+    Set<String> replies = new LinkedHashSet<>();
+    if (!parsed.hasDigit()) {
+      return replies;
+    }
+    // No quantity can start before the whitespace in front of the first number.
+    Matcher matcher = IS_UNIT.matcher(parsed.getContent())
+        .region(Math.max(0, parsed.getFirstNumberStart() - 1), parsed.getContent().length())
+        .useTransparentBounds(true)
+        .useAnchoringBounds(false);
     while (matcher.find()) {
-      processed |= convert(message, matcher.group(1) + matcher.group(2));
+      String reply = getReply(matcher.group(1) + matcher.group(2));
+      if (reply != null) {
+        replies.add(reply);
+      }
     }
-    return processed;
+    return replies;
   }
 
   @BasicCommand("converts imperial units to metric units")
   public boolean convert(Message msg, String quantity) {
-    quantity = quantity.replace(',', '.');
-    Amount amount;
-    try {
-      amount = Amount.valueOf(quantity);
-    } catch (Exception e) {
+    String reply = getReply(quantity);
+    if (reply == null) {
       return false;
     }
-    Unit oldUnit = amount.getUnit();
+    reply(msg, "%s", reply).soon();
+    return true;
+  }
 
-    Unit unit = amount.getUnit().getStandardUnit();
-    if (UNITS_TO_IGNORE.contains(unit)) {
-      return false;
+  /** Returns the reply to `quantity`, or null if it is not converted. */
+  static String getReply(String quantity) {
+    quantity = quantity.replace(',', '.');
+    Optional<String> cached = REPLIES.getIfPresent(quantity);
+    if (cached == null) {
+      cached = Optional.ofNullable(computeReply(quantity));
+      REPLIES.put(quantity, cached);
     }
-    Collection<Unit> possibleUnits = UNIT_PREFERENCES.get(unit);
+    return cached.orElse(null);
+  }
 
-    if (unit.equals(oldUnit) || possibleUnits.contains(oldUnit)) {
-      // Unit is already one of the preferred ones or there are no defined preferences. Do nothing.
-      return false;
+  /**
+   * Converts `quantity` to its best target unit. The number is parsed and converted exactly like
+   * jscience's Amount would, so that the replies stay the same.
+   */
+  private static String computeReply(String quantity) {
+    ParsePosition position = new ParsePosition(0);
+    Measurement amount = Measurement.parse(quantity, position);
+    if (amount == null) {
+      return null;
     }
-    if (possibleUnits.isEmpty()) {
-      possibleUnits = List.of(unit);
+    Conversion[] conversions = getConversions(quantity.substring(position.getIndex()));
+    if (conversions == null) {
+      return null;
     }
 
-    amount = getPreferredAmount(amount, possibleUnits);
-    reply(msg, CONVERSION_FORMAT, quantity, amount.getEstimatedValue(), amount.getUnit()).soon();
-    return true;
-  }
-
-  /** Converts the `amount` to the best suited unit in `possibleUnits`. */
-  private static Amount getPreferredAmount(Amount amount, Collection<Unit> possibleUnits) {
+    // Pick the target unit that characterizes the converted amount best.
     double best = Double.POSITIVE_INFINITY;
-    for (Unit unit : possibleUnits) {
-      Amount option = amount.to(unit);
+    double value = amount.getEstimatedValue();
+    Unit unit = conversions[0].source;
+    for (Conversion conversion : conversions) {
+      double option = conversion.apply(amount).getEstimatedValue();
       double current = score(option);
       if (current < best) {
-        amount = option;
+        value = option;
+        unit = conversion.target;
         best = current;
       }
     }
-    return amount;
+    return String.format(CONVERSION_FORMAT, quantity, value, unit);
   }
 
-  /**
-   * Returns a score that indicates how well the `amount` is characterized by its unit of measure.
-   * The lower the score is the stronger the preference.
-   */
-  private static double score(Amount amount) {
-    return Math.abs(1 - Math.log10(1e-20 + Math.abs(amount.getEstimatedValue())));
+  /** Returns the conversions of the unit `symbol`, or null if it is not converted. */
+  private static Conversion[] getConversions(String symbol) {
+    Optional<Conversion[]> conversions = ALIAS_CONVERSIONS.get(symbol);
+    if (conversions == null) {
+      conversions = UNIT_CONVERSIONS.getIfPresent(symbol);
+      if (conversions == null) {
+        conversions = Optional.ofNullable(resolveConversions(symbol));
+        UNIT_CONVERSIONS.put(symbol, conversions);
+      }
+    }
+    return conversions.orElse(null);
   }
 
-  static {
+  private static ImmutableMap<String, Optional<Conversion[]>> resolveAliases() {
     UnitFormat units = UnitFormat.getInstance();
     CUSTOM_ALIASES.forEach(units::alias);
+    Map<String, Optional<Conversion[]>> conversions = new HashMap<>();
+    for (String alias : CUSTOM_ALIASES.values()) {
+      conversions.put(alias, Optional.ofNullable(resolveConversions(alias)));
+    }
+    return ImmutableMap.copyOf(conversions);
+  }
+
+  /** Returns the conversions of the unit `symbol`, or null if it is not converted. */
+  private static Conversion[] resolveConversions(String symbol) {
+    if (!IS_UNIT_SYMBOL.matcher(symbol).matches()) {
+      return null;
+    }
+    ParsePosition position = new ParsePosition(0);
+    Unit unit = (Unit) UnitFormat.getInstance().parseObject(symbol, position);
+    if (unit == null || position.getIndex() < symbol.length()) {
+      return null;
+    }
+    Unit[] targets = resolveTargets(unit);
+    if (targets == null) {
+      return null;
+    }
+    Conversion[] conversions = new Conversion[targets.length];
+    for (int i = 0; i < targets.length; i++) {
+      conversions[i] = new Conversion(unit, targets[i]);
+    }
+    return conversions;
+  }
+
+  /** Returns the preferred units of `unit`, or null if quantities in `unit` are left alone. */
+  private static Unit[] resolveTargets(Unit unit) {
+    Unit standard = unit.getStandardUnit();
+    if (UNITS_TO_IGNORE.contains(standard)) {
+      return null;
+    }
+    Collection<Unit> possibleUnits = UNIT_PREFERENCES.get(standard);
+    if (standard.equals(unit) || possibleUnits.contains(unit)) {
+      // Unit is already one of the preferred ones or there are no defined preferences.
+      return null;
+    }
+    if (possibleUnits.isEmpty()) {
+      possibleUnits = List.of(standard);
+    }
+    return possibleUnits.toArray(new Unit[0]);
+  }
+
+  /**
+   * Returns a score that indicates how well a converted `value` is characterized by its unit of
+   * measure. The lower the score is the stronger the preference.
+   */
+  private static double score(double value) {
+    return Math.abs(1 - Math.log10(1e-20 + Math.abs(value)));
+  }
+
+  /** A conversion from one unit to another, with its converter resolved ahead of time. */
+  private static final class Conversion {
+
+    final Unit source;
+
+    final Unit target;
+
+    private final UnitConverter converter;
+
+    @SuppressWarnings("unchecked")
+    Conversion(Unit source, Unit target) {
+      this.source = source;
+      this.target = target;
+      converter = source.getConverterTo(target);
+    }
+
+    /** Converts `amount` the way Amount.to does. */
+    Measurement apply(Measurement amount) {
+      if (converter == UnitConverter.IDENTITY) {
+        return amount;
+      }
+      if (converter instanceof RationalConverter) {
+        RationalConverter rational = (RationalConverter) converter;
+        return amount.times(rational.getDividend()).divide(rational.getDivisor());
+      }
+      return amount.convert(converter);
+    }
   }
 }
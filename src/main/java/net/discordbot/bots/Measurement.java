@@ -0,0 +1,188 @@
+package net.discordbot.bots;
+
+import javolution.lang.MathLib;
+
+import java.text.ParsePosition;
+import javax.measure.converter.UnitConverter;
+
+/**
+ * A measured value as jscience's {@code Amount} keeps it: either an exact long or an interval of
+ * doubles, which is widened after every inexact step. Parsing and arithmetic follow jscience step
+ * by step so that converted values print exactly as they used to, but malformed numbers are
+ * reported without throwing.
+ */
+final class Measurement {
+
+  private static final double INCREMENT = 1 + Math.pow(2, -53);
+
+  private static final double DECREMENT = 1 - Math.pow(2, -53);
+
+  private final boolean exact;
+
+  private final long exactValue;
+
+  private final double minimum;
+
+  private final double maximum;
+
+  private Measurement(boolean exact, long exactValue, double minimum, double maximum) {
+    this.exact = exact;
+    this.exactValue = exactValue;
+    this.minimum = minimum;
+    this.maximum = maximum;
+  }
+
+  private static Measurement exact(long value) {
+    return new Measurement(true, value, value, value);
+  }
+
+  /** Returns the interval between `minimum` and `maximum`, widened to cover rounding errors. */
+  private static Measurement inexact(double minimum, double maximum) {
+    return new Measurement(
+        false,
+        0,
+        minimum < 0 ? minimum * INCREMENT : minimum * DECREMENT,
+        maximum < 0 ? maximum * DECREMENT : maximum * INCREMENT);
+  }
+
+  double getEstimatedValue() {
+    return exact ? (double) exactValue : (minimum + maximum) * 0.5;
+  }
+
+  Measurement times(long factor) {
+    if (exact) {
+      long product = exactValue * factor;
+      if ((double) product == (double) exactValue * (double) factor) {
+        return exact(product);
+      }
+    }
+    return factor > 0
+        ? new Measurement(false, 0, minimum * factor, maximum * factor)
+        : new Measurement(false, 0, maximum * factor, minimum * factor);
+  }
+
+  Measurement divide(long divisor) {
+    if (exact) {
+      long quotient = exactValue / divisor;
+      if ((double) quotient == (double) exactValue / (double) divisor) {
+        return exact(quotient);
+      }
+    }
+    return divisor > 0
+        ? inexact(minimum / divisor, maximum / divisor)
+        : inexact(maximum / divisor, minimum / divisor);
+  }
+
+  /** Converts this value with a converter that is neither the identity nor rational. */
+  Measurement convert(UnitConverter converter) {
+    return inexact(converter.convert(minimum), converter.convert(maximum));
+  }
+
+  /**
+   * Parses the number at the start of `quantity` and skips the spaces after it, like jscience does
+   * before it parses the unit. Returns null if there is no number, leaving `position` as is.
+   * Otherwise `position` is set to where the unit starts. Parenthesized numbers and numbers with
+   * an error are not supported.
+   */
+  static Measurement parse(String quantity, ParsePosition position) {
+    int start = position.getIndex();
+    int end = quantity.length();
+
+    // jscience first reads a long, which needs at least one digit.
+    int index = start;
+    boolean negative = false;
+    boolean digits = false;
+    long value = 0;
+    for (; index < end; index++) {
+      char c = quantity.charAt(index);
+      if (c >= '0' && c <= '9') {
+        long next = value * 10 - (c - '0');
+        if (next > value) {
+          return null;
+        }
+        value = next;
+        digits = true;
+      } else if ((c == '-' || c == '+') && index == start) {
+        negative = c == '-';
+      } else {
+        break;
+      }
+    }
+    if (!digits || (value == Long.MIN_VALUE && !negative)) {
+      return null;
+    }
+    // A long followed by a space is exact, anything else is read again as a double.
+    if (index < end && quantity.charAt(index) == ' ') {
+      position.setIndex(skipSpaces(quantity, index));
+      return exact(negative ? value : -value);
+    }
+
+    // The number starts with a digit after an optional sign, so it is neither NaN nor infinite.
+    index = start;
+    char c = quantity.charAt(index);
+    negative = c == '-';
+    if (negative || c == '+') {
+      c = quantity.charAt(++index);
+    }
+    long mantissa = 0;
+    int dot = -1;
+    while (true) {
+      if (c >= '0' && c <= '9') {
+        long next = mantissa * 10 + (c - '0');
+        if (next < mantissa) {
+          return null;
+        }
+        mantissa = next;
+      } else if (c == '.' && dot < 0) {
+        dot = index;
+      } else {
+        break;
+      }
+      if (++index >= end) {
+        break;
+      }
+      c = quantity.charAt(index);
+    }
+    if (negative) {
+      mantissa = -mantissa;
+    }
+    int fractionDigits = dot >= 0 ? index - dot - 1 : 0;
+
+    // The exponent may have no digits, but something has to follow its letter.
+    int exponent = 0;
+    if (index < end && (c == 'E' || c == 'e')) {
+      if (++index >= end) {
+        return null;
+      }
+      c = quantity.charAt(index);
+      boolean negativeExponent = c == '-';
+      if ((negativeExponent || c == '+') && ++index < end) {
+        c = quantity.charAt(index);
+      }
+      while (c >= '0' && c <= '9') {
+        int next = exponent * 10 + (c - '0');
+        if (next < exponent) {
+          return null;
+        }
+        exponent = next;
+        if (++index >= end) {
+          break;
+        }
+        c = quantity.charAt(index);
+      }
+      if (negativeExponent) {
+        exponent = -exponent;
+      }
+    }
+    double estimate = MathLib.toDoublePow10(mantissa, exponent - fractionDigits);
+    position.setIndex(skipSpaces(quantity, index));
+    return inexact(estimate, estimate);
+  }
+
+  private static int skipSpaces(String quantity, int index) {
+    while (index < quantity.length() && quantity.charAt(index) == ' ') {
+      index++;
+    }
+    return index;
+  }
+}
@@ -0,0 +1,272 @@
+package net.discordbot.bots;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.discordbot.util.PersistenceManager;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Produces downscaled and recompressed variants of meme images that exceed a byte budget. Variants
+ * are stored in an on-disk cache keyed by the content hash of the original, and the work happens on
+ * a background thread, so only new or changed files are processed after a restart. Variants that
+ * no original needs anymore are deleted. Animated GIFs cannot be recompressed without losing frames
+ * and are always sent as they are.
+ */
+final class MemeOptimizer {
+
+  /** Images below this size are sent as they are. */
+  private static final long MAX_BYTES = 1 << 20;
+
+  /** The largest width or height of an optimized image. */
+  private static final int MAX_DIMENSION = 1024;
+
+  private static final float[] JPEG_QUALITIES = {0.85f, 0.7f, 0.55f, 0.4f};
+
+  /** Matches the file names of variants, which start with the content hash of their original. */
+  private static final Pattern VARIANT_NAME = Pattern.compile("([0-9a-f]{64})\\.(?:jpg|png)");
+
+  private final File cacheFolder;
+
+  /** The content hash of every original that exceeds the budget. */
+  private final PersistenceManager<ConcurrentHashMap<File, ContentHash>> hashes;
+
+  /** The optimized variant of every original that has one. */
+  private final Map<File, File> variants = new ConcurrentHashMap<>();
+
+  private final ExecutorService worker =
+      Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder().setNameFormat("meme-optimizer").setDaemon(true).build());
+
+  /** Reports the memes that could not be optimized. */
+  private final BiConsumer<String, Throwable> errorLog;
+
+  MemeOptimizer(File cacheFolder, BiConsumer<String, Throwable> errorLog) {
+    this.cacheFolder = cacheFolder;
+    this.errorLog = errorLog;
+    cacheFolder.mkdirs();
+    hashes = new PersistenceManager<>(new File(cacheFolder, "hashes"), new ConcurrentHashMap<>());
+  }
+
+  /** Returns the file that should be sent for `meme`, which is `meme` until a variant is ready. */
+  File getVariant(File meme) {
+    return variants.getOrDefault(meme, meme);
+  }
+
+  /**
+   * Queues the optimization of all `memes` in the background. Memes that no longer exist lose
+   * their variants.
+   */
+  void optimize(Collection<File> memes) {
+    for (File meme : memes) {
+      worker.execute(() -> optimize(meme));
+    }
+    // The hashes of changed originals have been replaced by the time this runs.
+    worker.execute(this::deleteUnusedVariants);
+  }
+
+  private void optimize(File meme) {
+    String name = meme.getName().toLowerCase();
+    // A missing original has no length either.
+    if (meme.length() <= MAX_BYTES || name.endsWith(".gif")) {
+      variants.remove(meme);
+      if (hashes.get().containsKey(meme)) {
+        hashes.update(map -> map.remove(meme));
+      }
+      return;
+    }
+    try {
+      String hash = getContentHash(meme);
+      File variant = findVariant(hash);
+      if (variant == null) {
+        variant = createVariant(meme, hash);
+      }
+      if (variant != null) {
+        variants.put(meme, variant);
+      } else {
+        variants.remove(meme);
+      }
+    } catch (IOException | RuntimeException e) {
+      // Keep sending the original.
+      variants.remove(meme);
+      errorLog.accept("Could not optimize " + meme, e);
+    }
+  }
+
+  /** Returns the content hash of `meme`, which replaces the hash of an older version of it. */
+  private String getContentHash(File meme) throws IOException {
+    ContentHash known = hashes.get().get(meme);
+    if (known != null && known.isCurrent(meme)) {
+      return known.hash;
+    }
+    String hash = MoreFiles.asByteSource(meme.toPath()).hash(Hashing.sha256()).toString();
+    ContentHash contentHash = new ContentHash(meme, hash);
+    hashes.update(map -> map.put(meme, contentHash));
+    return hash;
+  }
+
+  /**
+   * Forgets the hashes of originals that were deleted, including those deleted while the bot was
+   * not running, and deletes the variants that no remaining hash refers to.
+   */
+  private void deleteUnusedVariants() {
+    List<File> deleted = hashes.get().keySet().stream()
+        .filter(meme -> !meme.isFile())
+        .collect(Collectors.toList());
+    if (!deleted.isEmpty()) {
+      hashes.update(map -> map.keySet().removeAll(deleted));
+      variants.keySet().removeAll(deleted);
+    }
+    Set<String> used = hashes.get().values().stream()
+        .map(contentHash -> contentHash.hash)
+        .collect(Collectors.toSet());
+    File[] files = cacheFolder.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      Matcher matcher = VARIANT_NAME.matcher(file.getName());
+      if (matcher.matches() && !used.contains(matcher.group(1))) {
+        try {
+          Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+          errorLog.accept("Could not delete " + file, e);
+        }
+      }
+    }
+  }
+
+  private File findVariant(String hash) {
+    for (String extension : new String[] {"jpg", "png"}) {
+      File variant = new File(cacheFolder, String.format("%s.%s", hash, extension));
+      if (variant.isFile()) {
+        return variant;
+      }
+    }
+    return null;
+  }
+
+  /** Writes the optimized variant of `meme` to the cache, or returns null if none fits. */
+  private File createVariant(File meme, String hash) throws IOException {
+    BufferedImage image = ImageIO.read(meme);
+    if (image == null) {
+      return null;
+    }
+    boolean hasAlpha = image.getColorModel().hasAlpha();
+    String extension = hasAlpha ? "png" : "jpg";
+    File variant = new File(cacheFolder, String.format("%s.%s", hash, extension));
+    File temp = new File(cacheFolder, String.format("%s.%s.tmp", hash, extension));
+
+    boolean fits = false;
+    for (int dimension = MAX_DIMENSION; !fits && dimension >= MAX_DIMENSION / 4; dimension /= 2) {
+      BufferedImage scaled = scale(image, dimension, hasAlpha);
+      fits = hasAlpha ? writePng(scaled, temp) : writeJpeg(scaled, temp);
+    }
+    if (!fits) {
+      temp.delete();
+      return null;
+    }
+    Files.move(temp.toPath(), variant.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    return variant;
+  }
+
+  private static BufferedImage scale(BufferedImage image, int dimension, boolean hasAlpha) {
+    double factor =
+        Math.min(1.0, (double) dimension / Math.max(image.getWidth(), image.getHeight()));
+    int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+    int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+    BufferedImage scaled = new BufferedImage(
+        width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = scaled.createGraphics();
+    graphics.setRenderingHint(
+        RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    if (!hasAlpha) {
+      graphics.setColor(Color.WHITE);
+      graphics.fillRect(0, 0, width, height);
+    }
+    graphics.drawImage(image, 0, 0, width, height, null);
+    graphics.dispose();
+    return scaled;
+  }
+
+  /** Writes `image` as a PNG. Returns false if it does not fit the budget. */
+  private static boolean writePng(BufferedImage image, File target) throws IOException {
+    return ImageIO.write(image, "png", target) && target.length() <= MAX_BYTES;
+  }
+
+  /** Writes `image` with the best JPEG quality that fits the budget. Returns false if none does. */
+  private static boolean writeJpeg(BufferedImage image, File target) throws IOException {
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
+    if (!writers.hasNext()) {
+      return false;
+    }
+    ImageWriter writer = writers.next();
+    try {
+      for (float quality : JPEG_QUALITIES) {
+        target.delete();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target)) {
+          ImageWriteParam param = writer.getDefaultWriteParam();
+          param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+          param.setCompressionQuality(quality);
+          writer.setOutput(out);
+          writer.write(null, new IIOImage(image, null, null), param);
+        }
+        if (target.length() <= MAX_BYTES) {
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  /** The content hash of an original, along with the version of the file it was computed for. */
+  private static final class ContentHash implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String hash;
+
+    private final long lastModified;
+
+    private final long length;
+
+    private ContentHash(File file, String hash) {
+      this.hash = hash;
+      this.lastModified = file.lastModified();
+      this.length = file.length();
+    }
+
+    /** Returns true if `file` did not change since it was hashed. */
+    private boolean isCurrent(File file) {
+      return file.lastModified() == lastModified && file.length() == length;
+    }
+  }
+}
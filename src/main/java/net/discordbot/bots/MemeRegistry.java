@@ -0,0 +1,86 @@
+package net.discordbot.bots;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out a small integer ID to every meme file that was ever seen. IDs are never reused and are
+ * stored in a file that lists one meme path per line, so they stay valid across reloads and
+ * restarts and can index primitive arrays on disk.
+ */
+final class MemeRegistry {
+
+  private final Map<File, Integer> ids = new HashMap<>();
+
+  /** The number of lines in the registry file, which is the next ID. */
+  private int size;
+
+  private final OutputStream out;
+
+  MemeRegistry(File registryFile) {
+    try {
+      if (registryFile.exists()) {
+        truncateTornLine(registryFile);
+        List<String> paths = Files.readAllLines(registryFile.toPath(), StandardCharsets.UTF_8);
+        paths.forEach(path -> add(canonicalize(new File(path))));
+      }
+      out = new FileOutputStream(registryFile, true);
+    } catch (IOException e) {
+      throw new IllegalStateException("Encountered exception while loading " + registryFile, e);
+    }
+  }
+
+  /** Drops a last line that was only partly written before a crash. */
+  private static void truncateTornLine(File registryFile) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(registryFile, "rw")) {
+      long length = file.length();
+      while (length > 0) {
+        file.seek(length - 1);
+        if (file.read() == '\n') {
+          break;
+        }
+        length--;
+      }
+      file.setLength(length);
+    }
+  }
+
+  /** Returns the absolute and normalized form of `file`, under which its ID is stored. */
+  static File canonicalize(File file) {
+    return file.toPath().toAbsolutePath().normalize().toFile();
+  }
+
+  /**
+   * Returns the ID of `file`, assigning and storing a new one if it has none. Relative paths are
+   * resolved against the working directory, so every spelling of a path gets the same ID.
+   */
+  synchronized int register(File file) {
+    file = canonicalize(file);
+    Integer id = ids.get(file);
+    if (id == null) {
+      try {
+        out.write((file.getPath() + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+      } catch (IOException e) {
+        throw new IllegalStateException("Encountered exception while registering " + file, e);
+      }
+      id = add(file);
+    }
+    return id;
+  }
+
+  private int add(File file) {
+    int id = size++;
+    // Older lines may spell a file differently, and its first ID is the one that holds weights.
+    ids.putIfAbsent(file, id);
+    return id;
+  }
+}
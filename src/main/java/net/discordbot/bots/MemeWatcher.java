@@ -0,0 +1,114 @@
+package net.discordbot.bots;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Watches the meme folder and the author folders inside it, and reports the paths that were
+ * created, modified or deleted. A rename is reported as both of its paths, and a reported folder
+ * means that everything inside it must be looked at again. Events that arrive close together are
+ * reported as one batch, so copying a folder of memes leads to a single update.
+ */
+final class MemeWatcher {
+
+  /** How long to wait for further events before reporting a batch. */
+  private static final long QUIET_PERIOD_MS = 250;
+
+  private final Path root;
+
+  private final Consumer<Collection<File>> listener;
+
+  /** Reports the exceptions thrown while watching. */
+  private final BiConsumer<String, Throwable> errorLog;
+
+  private final WatchService watchService;
+
+  MemeWatcher(
+      File root, Consumer<Collection<File>> listener, BiConsumer<String, Throwable> errorLog)
+      throws IOException {
+    this.root = root.toPath();
+    this.listener = listener;
+    this.errorLog = errorLog;
+    this.watchService = this.root.getFileSystem().newWatchService();
+  }
+
+  /** Starts watching in the background. */
+  void start() throws IOException {
+    register(root);
+    try (Stream<Path> paths = Files.list(root)) {
+      for (Path path : paths.filter(Files::isDirectory).collect(Collectors.toList())) {
+        register(path);
+      }
+    }
+    Thread thread = new Thread(this::run, "meme-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void register(Path folder) throws IOException {
+    folder.register(
+        watchService,
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_DELETE,
+        StandardWatchEventKinds.ENTRY_MODIFY);
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        Set<File> changed = new LinkedHashSet<>();
+        WatchKey key = watchService.take();
+        do {
+          collectChanges(key, changed);
+          key.reset();
+          key = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+        } while (key != null);
+        try {
+          listener.accept(changed);
+        } catch (RuntimeException e) {
+          errorLog.accept("Could not update memes", e);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Stop watching.
+    }
+  }
+
+  private void collectChanges(WatchKey key, Set<File> changed) {
+    Path folder = (Path) key.watchable();
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        // Events were lost, so everything must be looked at again.
+        changed.add(root.toFile());
+        continue;
+      }
+      Path path = folder.resolve((Path) event.context());
+      changed.add(path.toFile());
+      if (folder.equals(root)
+          && event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+          && Files.isDirectory(path)) {
+        // Files added before the folder was registered are covered by reporting the folder itself.
+        try {
+          register(path);
+        } catch (IOException e) {
+          errorLog.accept("Could not watch " + path, e);
+        }
+      }
+    }
+  }
+}
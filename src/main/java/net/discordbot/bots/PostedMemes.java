@@ -0,0 +1,86 @@
+package net.discordbot.bots;
+
+import net.discordbot.util.IdSlots;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which meme was posted in which message, so that feedback reactions can be attributed to
+ * memes days after they were posted. Entries live in an open-addressing table of primitives that
+ * costs 16 bytes per slot. Expired entries are overwritten in place, and when all slots a message
+ * may use are taken, the oldest of them is evicted.
+ */
+final class PostedMemes {
+
+  /** Returned by `get` for messages that are not tracked. */
+  static final int NO_MEME = -1;
+
+  /** How many slots a message may use, starting at its home slot. */
+  private static final int MAX_PROBES = 16;
+
+  private final long maxAgeSeconds;
+
+  private final long start = System.nanoTime();
+
+  private final IdSlots slots;
+
+  /** The ID of the message in every slot, or 0 for empty slots. */
+  private final long[] messageIds;
+
+  private final int[] memes;
+
+  /** The second at which each entry was posted, counted from `start`. */
+  private final int[] postedAt;
+
+  PostedMemes(int capacity, long maxAge, TimeUnit unit) {
+    slots = new IdSlots(capacity);
+    messageIds = new long[capacity];
+    memes = new int[capacity];
+    postedAt = new int[capacity];
+    maxAgeSeconds = unit.toSeconds(maxAge);
+  }
+
+  synchronized void put(long messageId, int meme) {
+    int now = now();
+    int home = slots.slot(messageId);
+    int target = home;
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      int slot = slots.offset(home, probe);
+      if (messageIds[slot] == 0 || messageIds[slot] == messageId || isExpired(slot, now)) {
+        target = slot;
+        break;
+      }
+      if (postedAt[slot] < postedAt[target]) {
+        target = slot;
+      }
+    }
+    messageIds[target] = messageId;
+    memes[target] = meme;
+    postedAt[target] = now;
+  }
+
+  /** Returns the meme that was posted in the message, or NO_MEME. */
+  synchronized int get(long messageId) {
+    int now = now();
+    int home = slots.slot(messageId);
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      int slot = slots.offset(home, probe);
+      if (messageIds[slot] == messageId) {
+        return isExpired(slot, now) ? NO_MEME : memes[slot];
+      }
+      if (messageIds[slot] == 0) {
+        // Slots are never emptied, so the message would have been here.
+        break;
+      }
+    }
+    return NO_MEME;
+  }
+
+  private boolean isExpired(int slot, int now) {
+    return now - postedAt[slot] > maxAgeSeconds;
+  }
+
+  private int now() {
+    return (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+  }
+}
@@ -1,34 +1,50 @@
 package net.discordbot.bots;
 
 import com.google.common.base.Verify;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.*;
 import net.discordbot.common.BasicCommand;
 import net.discordbot.common.DiscordBot;
+import net.discordbot.common.MessageInterest;
+import net.discordbot.common.ParsedMessage;
 import net.discordbot.common.TextListener;
 import net.discordbot.util.Config;
+import net.discordbot.util.KeywordMatcher;
+import net.discordbot.util.MappedCounters;
 import net.discordbot.util.PersistenceManager;
 import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.entities.Emote;
 import net.dv8tion.jda.core.entities.Message;
 import net.dv8tion.jda.core.entities.MessageChannel;
 import net.dv8tion.jda.core.entities.MessageReaction;
-import org.ahocorasick.trie.Trie;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 public final class ReactBot extends DiscordBot implements TextListener {
 
-  private static final int PAST_REACTION_CACHE_SIZE = 100;
+  /** How many posted memes are tracked for feedback. Each slot costs 16 bytes. */
+  private static final int POSTED_MEMES_CAPACITY = 1 << 18;
+
+  /** How long feedback on a posted meme is taken into account. */
+  private static final long FEEDBACK_WINDOW_DAYS = 7;
 
   /** The default chance of posting a meme with reaction score of 0. */
   private static final double DEFAULT_CHANCE = 0.9;
@@ -39,28 +55,46 @@ public final class ReactBot extends DiscordBot implements TextListener {
   private static final Pattern MEME_FILE_PATTERN =
       Pattern.compile("([a-z_']+)[0-9]*\\.(jpg|png|gif)");
 
+  private static final String REACT_FILE = "react.txt";
+
   private static final Pattern COMMA_SPLIT = Pattern.compile(", *");
 
   /** Format for react file lines. */
   private static final Pattern REACT_LINE_PATTERN =
       Pattern.compile(String.format("(%s): ([a-z ,]*)", MEME_FILE_PATTERN.pattern()));
 
-  /** Cache containing all recent reactions posted by the RaectBot. */
-  private final Cache<Long, Reaction> reactionCache =
-      CacheBuilder.newBuilder().maximumSize(PAST_REACTION_CACHE_SIZE).build();
+  /** The meme of every message posted by the ReactBot within the feedback window. */
+  private final PostedMemes postedMemes =
+      new PostedMemes(POSTED_MEMES_CAPACITY, FEEDBACK_WINDOW_DAYS, TimeUnit.DAYS);
+
+  /** Stable IDs of all memes, which index `postedMemes` and `reactionWeights`. */
+  private MemeRegistry memeRegistry;
 
   /** Reactions used for feedback to reactions. */
-  private ImmutableMap<String, Integer> emoteReactionScores;
+  private volatile ImmutableMap<String, Integer> emoteReactionScores;
+
+  private volatile ImmutableMap<Long, String> memeifiers;
 
-  private ImmutableMap<Long, String> memeifiers;
+  /** The reaction score of every meme by ID. */
+  private MappedCounters reactionWeights;
 
-  private final Multimap<String, Reaction> reactions = HashMultimap.create();
+  /** Smaller variants of the memes that are too large to be sent as they are. */
+  private MemeOptimizer optimizer;
 
-  private final Map<String, Reaction> reactionMemes = new HashMap<>();
+  /** Attachments of memes that were already uploaded to Discord, keyed by the file sent. */
+  private PersistenceManager<ConcurrentHashMap<File, Upload>> uploads;
 
-  private PersistenceManager<ConcurrentHashMap<File, AtomicInteger>> reactionWeights;
+  /** The memes that messages are matched against, replaced as a whole whenever memes change. */
+  private volatile MemeIndex index = new MemeIndex(ImmutableSetMultimap.of());
 
-  private Trie textMatcher;
+  /** All meme files by path. Guarded by `this`, like the other sources of the index. */
+  private final Map<File, Reaction> memeFiles = new TreeMap<>();
+
+  /** The lines of every react.txt file by path. */
+  private final Map<File, List<String>> reactFiles = new TreeMap<>();
+
+  /** React lines added with `memeify` since the bot started. */
+  private final List<String> memeifyLines = new ArrayList<>();
 
   private File memeFolder;
 
@@ -70,10 +104,6 @@ public final class ReactBot extends DiscordBot implements TextListener {
     return matcher.group(1).replace('_', ' ');
   }
 
-  private static <T> Optional<T> randomElement(Collection<T> coll) {
-    return coll.stream().skip((int) (Math.random() * coll.size())).findFirst();
-  }
-
   private static double weightFunction(int w) {
     return Math.max(MIN_CHANCE, DEFAULT_CHANCE * Math.exp(0.1 * w));
   }
@@ -83,81 +113,190 @@ public final class ReactBot extends DiscordBot implements TextListener {
     super.prepare(jda, cfg);
     memeifiers = cfg.getMemeifiers();
     memeFolder = cfg.getMemeFolder();
+    optimizer = new MemeOptimizer(
+        new File(cfg.getPersistenceFile().getPath() + ".optimized"), this::logException);
+    emoteReactionScores = cfg.getReactionScores();
+    memeRegistry = new MemeRegistry(new File(cfg.getPersistenceFile().getPath() + ".memes"));
+    File weightsFile = new File(cfg.getPersistenceFile().getPath() + ".weights");
+    migrateWeights(cfg.getPersistenceFile(), weightsFile, memeRegistry);
+    reactionWeights = new MappedCounters(weightsFile);
+    uploads = new PersistenceManager<>(
+        new File(cfg.getPersistenceFile().getPath() + ".uploads"), new ConcurrentHashMap<>());
     try {
-      loadMemes();
+      updateMemes(ImmutableList.of(memeFolder));
+      new MemeWatcher(memeFolder, this::updateMemes, this::logException).start();
     } catch (IOException e) {
       throw new IllegalStateException("Encountered unexpected error while loading memes", e);
     }
+  }
+
+  @Override
+  public void updateConfig(Config cfg) {
+    memeifiers = cfg.getMemeifiers();
     emoteReactionScores = cfg.getReactionScores();
-    reactionWeights = new PersistenceManager<>(cfg.getPersistenceFile(), new ConcurrentHashMap<>());
+  }
+
+  /**
+   * Creates `weightsFile` from the weights of older versions, which kept them in a Java-serialized
+   * map in `persistenceFile`. The weights file only appears once it is complete, so an interrupted
+   * migration starts over.
+   */
+  static void migrateWeights(File persistenceFile, File weightsFile, MemeRegistry memeRegistry) {
+    if (weightsFile.exists() || !persistenceFile.isFile()) {
+      return;
+    }
+    try {
+      Map<File, Integer> weights = readSerializedWeights(persistenceFile);
+      File temp = new File(weightsFile.getPath() + ".tmp");
+      Files.deleteIfExists(temp.toPath());
+      MappedCounters migrated = new MappedCounters(temp);
+      weights.forEach(
+          (meme, weight) -> migrated.add(memeRegistry.register(meme), weight));
+      migrated.close();
+      Files.move(temp.toPath(), weightsFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      Files.move(
+          persistenceFile.toPath(),
+          new File(persistenceFile.getPath() + ".migrated").toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException | ClassNotFoundException e) {
+      throw new IllegalStateException("Encountered exception while migrating weights", e);
+    }
+  }
+
+  /** Returns the serialized weights by canonical file, since older versions stored any path. */
+  private static Map<File, Integer> readSerializedWeights(File file)
+      throws IOException, ClassNotFoundException {
+    Map<File, AtomicInteger> weights;
+    try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+      weights = (Map<File, AtomicInteger>) in.readObject();
+    }
+    Map<File, Integer> canonical = new HashMap<>();
+    weights.forEach((meme, weight) ->
+        canonical.merge(MemeRegistry.canonicalize(meme), weight.get(), Integer::sum));
+    return canonical;
   }
 
   @Override
   public void parseReaction(MessageReaction reaction, int factor) {
-    Reaction react = reactionCache.getIfPresent(reaction.getMessageIdLong());
-    if (react != null) {
-      react.recordReaction(reaction.getEmote().getEmote(), factor);
+    int meme = postedMemes.get(reaction.getMessageIdLong());
+    if (meme != PostedMemes.NO_MEME) {
+      recordReaction(meme, reaction.getEmote().getEmote(), factor);
     }
   }
 
+  private void recordReaction(int meme, Emote emote, int factor) {
+    if (emote != null) {
+      factor *= emoteReactionScores.getOrDefault(emote.getName(), 0);
+      if (factor != 0) {
+        reactionWeights.add(meme, factor);
+        index.invalidate(meme);
+      }
+    }
+  }
+
+  @Override
+  public MessageInterest getInterest() {
+    return index.interest;
+  }
+
   @Override
-  public boolean parseMessage(Message message) {
-    return postMeme(message.getChannel(), message.getContent(), false);
-  }
-
-  private void loadMemes() throws IOException {
-    HashSet<File> reactFiles = new HashSet<>();
-    Files.walk(memeFolder.toPath(), 2).map(Path::toFile).filter(File::isFile).forEach(
-        meme -> {
-          if (meme.getName().equals("react.txt")) {
-            reactFiles.add(meme);
-          } else {
-            addMemeFile(meme);
-          }
+  public boolean parseMessage(Message message, ParsedMessage parsed) {
+    return postMeme(message.getChannel(), parsed.getContent(), false);
+  }
+
+  /**
+   * Reloads the memes and react files at the given paths and publishes the new index. A folder
+   * reloads everything inside it, and a path that no longer exists drops everything that was there.
+   */
+  private synchronized void updateMemes(Collection<File> paths) {
+    List<File> updatedMemes = new ArrayList<>();
+    for (File path : paths) {
+      Path prefix = path.toPath();
+      memeFiles.keySet().removeIf(file -> file.toPath().startsWith(prefix));
+      reactFiles.keySet().removeIf(file -> file.toPath().startsWith(prefix));
+      // Memes live in the meme folder and in the author folders inside it.
+      int depth = prefix.getNameCount() - memeFolder.toPath().getNameCount();
+      if (path.exists() && depth <= 2) {
+        try (Stream<Path> files = Files.walk(prefix, 2 - depth)) {
+          files.map(Path::toFile).filter(File::isFile).forEach(file -> {
+            if (addFile(file)) {
+              updatedMemes.add(file);
+            }
+          });
+        } catch (IOException | UncheckedIOException e) {
+          logException("Could not load memes from " + path, e);
         }
-    );
-    for (File reactFile : reactFiles) {
-      Files.lines(reactFile.toPath()).forEach(this::addMemeReaction);
+      }
+    }
+    optimizer.optimize(updatedMemes);
+    publishIndex();
+  }
+
+  /** Adds `file` to the sources of the index. Returns true if it is a meme. */
+  private boolean addFile(File file) {
+    String name = file.getName();
+    if (name.equals(REACT_FILE)) {
+      try {
+        reactFiles.put(file, Files.readAllLines(file.toPath()));
+      } catch (IOException e) {
+        logException("Could not read " + file, e);
+      }
+      return false;
     }
-    Trie.TrieBuilder matcherBuilder = Trie.builder().ignoreCase();
-    reactions.keySet().forEach(matcherBuilder::addKeyword);
-    textMatcher = matcherBuilder.build();
+    if (!MEME_FILE_PATTERN.matcher(name).matches()) {
+      return false;
+    }
+    memeFiles.put(file, new Reaction(file));
+    return true;
   }
 
-  private void addMemeFile(File meme) {
-    Reaction reaction = new Reaction(meme);
-    reactionMemes.put(meme.getName(), reaction);
-    reactions.put(getMemeKeyword(meme.getName()), reaction);
+  private synchronized void publishIndex() {
+    Map<String, Reaction> memesByName = new HashMap<>();
+    ImmutableSetMultimap.Builder<String, Reaction> reactions = ImmutableSetMultimap.builder();
+    for (Reaction reaction : memeFiles.values()) {
+      memesByName.put(reaction.reactFile.getName(), reaction);
+      reactions.put(getMemeKeyword(reaction.reactFile.getName()), reaction);
+    }
+    Iterable<List<String>> reactLines =
+        Iterables.concat(reactFiles.values(), ImmutableList.of(memeifyLines));
+    for (List<String> lines : reactLines) {
+      lines.forEach(line -> addMemeReaction(memesByName, reactions, line));
+    }
+    index = new MemeIndex(reactions.build());
   }
 
-  private boolean addMemeReaction(String line) {
+  private static void addMemeReaction(
+      Map<String, Reaction> memesByName,
+      ImmutableSetMultimap.Builder<String, Reaction> reactions,
+      String line) {
     Matcher matcher = REACT_LINE_PATTERN.matcher(line);
     if (!matcher.matches()) {
-      return false;
+      return;
     }
-    String memeFile = matcher.group(1);
-    Reaction reaction =
-        Verify.verifyNotNull(
-            reactionMemes.get(memeFile), "Meme file %s not found", memeFile);
-    for (String reactionPattern : COMMA_SPLIT.split(matcher.group(4))) {
-      reactions.put(reactionPattern, reaction);
+    // Lines of memes that were removed are ignored until the meme comes back.
+    Reaction reaction = memesByName.get(matcher.group(1));
+    if (reaction != null) {
+      for (String reactionPattern : COMMA_SPLIT.split(matcher.group(4))) {
+        reactions.put(reactionPattern, reaction);
+      }
     }
-    return true;
   }
 
   @BasicCommand("adds a new meme to the collection")
-  public void memeify(Message msg, String memeName, String aliases) {
+  public CompletableFuture<?> memeify(Message msg, String memeName, String aliases) {
     String author = memeifiers.get(msg.getAuthor().getIdLong());
     if (author == null) {
-      reply(msg, "you are not a meme master!").now();
-      return;
+      return reply(msg, "you are not a meme master!").submit();
     }
     File meme = validateMemeFile(new File(memeFolder, author), memeName);
     if (meme == null || !meme.isFile()) {
-      reply(msg, "your memeify request is malformed").now();
-      return;
+      return reply(msg, "your memeify request is malformed").submit();
+    }
+    synchronized (this) {
+      memeifyLines.add(String.format("%s: %s", meme.getName(), aliases));
+      publishIndex();
     }
-    addMemeReaction(String.format("%s: %s", meme.getName(), aliases));
+    return CompletableFuture.completedFuture(null);
   }
 
   private File validateMemeFile(File memeFolder, String memeName) {
@@ -175,49 +314,194 @@ public final class ReactBot extends DiscordBot implements TextListener {
   }
 
   private boolean postMeme(MessageChannel channel, String text, boolean bypassFilter) {
-    String lowercaseText = text.toLowerCase();
-    Optional<Reaction> meme = getExactMeme(lowercaseText).or(() -> getPartialMeme(lowercaseText));
-    meme.ifPresent(x -> x.post(channel, bypassFilter));
-    return meme.isPresent();
+    MemeIndex index = this.index;
+    int keyword = index.textMatcher.findRandom(text, ThreadLocalRandom.current());
+    if (keyword == KeywordMatcher.NO_MATCH) {
+      return false;
+    }
+    Reaction meme = index.pick(keyword, bypassFilter);
+    if (meme != null) {
+      meme.post(channel);
+    }
+    return true;
   }
 
-  private Optional<Reaction> getExactMeme(String text) {
-    return randomElement(reactions.get(text));
+  /**
+   * Immutable view of all memes and the keywords that trigger them. Memes and keywords are numbered
+   * densely, and each keyword keeps an alias table over the chances of its memes that is rebuilt
+   * lazily whenever feedback changes the weight of one of them.
+   */
+  private static final class MemeIndex {
+
+    private final Reaction[] memes;
+
+    /** The index of every meme by its ID in the MemeRegistry. */
+    private final ImmutableMap<Integer, Integer> memeIds;
+
+    private final ImmutableMap<String, Integer> keywordIds;
+
+    /** The IDs of the memes of every keyword. */
+    private final int[][] keywordMemes;
+
+    /** The IDs of the keywords of every meme. */
+    private final int[][] memeKeywords;
+
+    /** Bumped whenever the weight of a meme of the keyword changes. */
+    private final AtomicIntegerArray versions;
+
+    private final AtomicReferenceArray<WeightedMemes> tables;
+
+    /** Finds keywords by their ID. */
+    private final KeywordMatcher textMatcher;
+
+    /** Interest in all messages that contain one of the keywords. */
+    private final MessageInterest interest;
+
+    private MemeIndex(ImmutableSetMultimap<String, Reaction> reactions) {
+      memes = ImmutableSet.copyOf(reactions.values()).toArray(new Reaction[0]);
+      ImmutableMap.Builder<Integer, Integer> memeIds = ImmutableMap.builder();
+      for (int id = 0; id < memes.length; id++) {
+        memeIds.put(memes[id].id, id);
+      }
+      this.memeIds = memeIds.build();
+
+      ImmutableMap.Builder<String, Integer> keywordIds = ImmutableMap.builder();
+      keywordMemes = new int[reactions.keySet().size()][];
+      int keyword = 0;
+      for (String key : reactions.keySet()) {
+        keywordIds.put(key, keyword);
+        keywordMemes[keyword++] =
+            reactions.get(key).stream().mapToInt(meme -> this.memeIds.get(meme.id)).toArray();
+      }
+      this.keywordIds = keywordIds.build();
+      memeKeywords = new int[memes.length][];
+      ImmutableSetMultimap<Reaction, String> keywordsByMeme = reactions.inverse();
+      for (int id = 0; id < memes.length; id++) {
+        memeKeywords[id] =
+            keywordsByMeme.get(memes[id]).stream().mapToInt(this.keywordIds::get).toArray();
+      }
+      versions = new AtomicIntegerArray(keywordMemes.length);
+      tables = new AtomicReferenceArray<>(keywordMemes.length);
+
+      textMatcher = new KeywordMatcher(reactions.keySet().asList());
+      interest = MessageInterest.keywords(reactions.keySet());
+    }
+
+    /**
+     * Returns a meme of `keyword`, or null if the dice say that no meme should be posted. Every
+     * meme is posted with its chance capped at 1, like rolling for a uniformly picked meme would.
+     */
+    private Reaction pick(int keyword, boolean bypassFilter) {
+      Random random = ThreadLocalRandom.current();
+      int[] candidates = keywordMemes[keyword];
+      if (bypassFilter) {
+        return memes[candidates[random.nextInt(candidates.length)]];
+      }
+      int pick = getTable(keyword).roll(random);
+      return pick == AliasTable.NONE ? null : memes[candidates[pick]];
+    }
+
+    private AliasTable getTable(int keyword) {
+      int version = versions.get(keyword);
+      WeightedMemes weighted = tables.get(keyword);
+      if (weighted == null || weighted.version != version) {
+        int[] candidates = keywordMemes[keyword];
+        double[] chances = new double[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+          // A meme with a chance above 1 is always posted once it is picked, but not more often.
+          chances[i] = Math.min(1, memes[candidates[i]].getChance());
+        }
+        weighted = new WeightedMemes(version, new AliasTable(chances));
+        tables.set(keyword, weighted);
+      }
+      return weighted.table;
+    }
+
+    /** Marks the tables of all keywords of the meme with the registry ID `meme` as outdated. */
+    private void invalidate(int meme) {
+      Integer id = memeIds.get(meme);
+      if (id != null) {
+        for (int keyword : memeKeywords[id]) {
+          versions.incrementAndGet(keyword);
+        }
+      }
+    }
   }
 
-  private Optional<Reaction> getPartialMeme(String text) {
-    return randomElement(textMatcher.parseText(text)).flatMap(x -> getExactMeme(x.getKeyword()));
+  /** The alias table of a keyword, along with the version of the weights it was built from. */
+  private static final class WeightedMemes {
+
+    private final int version;
+
+    private final AliasTable table;
+
+    private WeightedMemes(int version, AliasTable table) {
+      this.version = version;
+      this.table = table;
+    }
   }
 
   private final class Reaction {
 
     private final File reactFile;
 
+    private final int id;
+
     Reaction(File reactFile) {
       this.reactFile = reactFile;
+      this.id = memeRegistry.register(reactFile);
     }
 
-    private void post(MessageChannel channel, boolean bypassFilter) {
-      if (bypassFilter || Math.random() <= getWeight()) {
-        long reactID = message(channel).addFile(reactFile).now().getIdLong();
-        reactionCache.put(reactID, this);
+    private void post(MessageChannel channel) {
+      // An upload of the original must not be reused once a smaller variant is ready.
+      File file = optimizer.getVariant(reactFile);
+      Upload upload = uploads.get().get(file);
+      if (upload != null && upload.isCurrent(file)) {
+        // Show the copy Discord already has instead of uploading the file again.
+        message(channel).embedImage(upload.url).submit()
+            .thenAccept(posted -> postedMemes.put(posted.getIdLong(), id))
+            .exceptionally(this::logFailedPost);
+        return;
       }
+      message(channel).addFile(file).submit().thenAccept(posted -> {
+        postedMemes.put(posted.getIdLong(), id);
+        if (!posted.getAttachments().isEmpty()) {
+          Upload uploaded = new Upload(file, posted.getAttachments().get(0).getUrl());
+          uploads.update(map -> map.put(file, uploaded));
+        }
+      }).exceptionally(this::logFailedPost);
     }
 
-    private void recordReaction(Emote emote, int factor) {
-      if (emote != null) {
-        factor *= emoteReactionScores.getOrDefault(emote.getName(), 0);
-        if (factor != 0) {
-          AtomicInteger weight = new AtomicInteger(0);
-          weight = Optional.ofNullable(reactionWeights.get().putIfAbsent(reactFile, weight)).orElse(weight);
-          weight.getAndAdd(factor);
-        }
-      }
+    private Void logFailedPost(Throwable error) {
+      logException("Could not post " + reactFile, error);
+      return null;
+    }
+
+    private double getChance() {
+      return weightFunction(reactionWeights.get(id));
+    }
+  }
+
+  /** The location of an uploaded meme file, along with the version of the file it holds. */
+  private static final class Upload implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String url;
+
+    private final long lastModified;
+
+    private final long length;
+
+    private Upload(File file, String url) {
+      this.url = url;
+      this.lastModified = file.lastModified();
+      this.length = file.length();
     }
 
-    private double getWeight() {
-      AtomicInteger weight = reactionWeights.get().getOrDefault(reactFile, new AtomicInteger(0));
-      return weightFunction(weight.get());
+    /** Returns true if `file` did not change since it was uploaded. */
+    private boolean isCurrent(File file) {
+      return file.lastModified() == lastModified && file.length() == length;
     }
   }
 }
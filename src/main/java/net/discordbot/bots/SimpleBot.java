@@ -10,6 +10,7 @@ import net.dv8tion.jda.core.entities.Message;
 
 import java.io.File;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 public class SimpleBot extends DiscordBot {
 
@@ -30,20 +31,20 @@ public class SimpleBot extends DiscordBot {
   }
 
   @BasicCommand("Greets the player")
-  public void hello(Message message) {
-    reply(message, "hello m8!").now();
+  public CompletableFuture<Message> hello(Message message) {
+    return reply(message, "hello m8!").submit();
   }
 
   @BasicCommand("Rolls a die")
-  public void roll(Message message) {
+  public CompletableFuture<Message> roll(Message message) {
     int value = 1 + randomNumberGenerator.nextInt(6);
-    reply(message, "Behold the result of the demonic die roll")
+    return reply(message, "Behold the result of the demonic die roll")
         .addFile(diceRoll.get(value))
-        .soon();
+        .submit();
   }
 
   @BasicCommand("Random number generator in [lo; hi)")
-  public void rng(Message message, String bounds) {
+  public CompletableFuture<Message> rng(Message message, String bounds) {
     int mid = bounds.indexOf(':');
     int lo, hi;
     if (mid == -1) {
@@ -54,6 +55,6 @@ public class SimpleBot extends DiscordBot {
     }
     hi = Integer.parseInt(bounds);
     int value = randomNumberGenerator.nextInt(hi - lo) + lo;
-    reply(message, "I have drawn ***%d*** out of my demonic hat", value).now();
+    return reply(message, "I have drawn ***%d*** out of my demonic hat", value).submit();
   }
 }
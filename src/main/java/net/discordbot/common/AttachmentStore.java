@@ -0,0 +1,95 @@
+package net.discordbot.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the contents of recently sent files in memory, so hot memes and helper images are not read
+ * from disk on every send. Entries are evicted in least recently used order once the cache exceeds
+ * its byte budget, and are reloaded whenever the modification time or size of the file changes.
+ */
+final class AttachmentStore {
+
+  private final long maxBytes;
+
+  private final long maxFileBytes;
+
+  /** Cached files in least recently used order. */
+  private final LinkedHashMap<File, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long totalBytes;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  AttachmentStore(long maxBytes, long maxFileBytes) {
+    this.maxBytes = maxBytes;
+    this.maxFileBytes = maxFileBytes;
+  }
+
+  /**
+   * Returns the contents of `file`, or null if the file is too large to be cached or cannot be
+   * read. Callers should fall back to sending the file itself in that case.
+   */
+  byte[] get(File file) {
+    long lastModified = file.lastModified();
+    long length = file.length();
+    synchronized (this) {
+      Entry entry = entries.get(file);
+      if (entry != null && entry.lastModified == lastModified && entry.data.length == length) {
+        hits.incrementAndGet();
+        return entry.data;
+      }
+    }
+    misses.incrementAndGet();
+    if (length > maxFileBytes) {
+      return null;
+    }
+    byte[] data;
+    try {
+      data = Files.readAllBytes(file.toPath());
+    } catch (IOException e) {
+      return null;
+    }
+    put(file, new Entry(data, lastModified));
+    return data;
+  }
+
+  private synchronized void put(File file, Entry entry) {
+    Entry old = entries.put(file, entry);
+    totalBytes += entry.data.length - (old == null ? 0 : old.data.length);
+    Iterator<Map.Entry<File, Entry>> eldest = entries.entrySet().iterator();
+    while (totalBytes > maxBytes && eldest.hasNext()) {
+      Entry evicted = eldest.next().getValue();
+      eldest.remove();
+      totalBytes -= evicted.data.length;
+      evictions.incrementAndGet();
+    }
+  }
+
+  synchronized String getStatistics() {
+    return String.format(
+        "attachments: %d files, %dKB cached, %d hits, %d misses, %d evictions",
+        entries.size(), totalBytes / 1024, hits.get(), misses.get(), evictions.get());
+  }
+
+  private static final class Entry {
+
+    private final byte[] data;
+
+    private final long lastModified;
+
+    private Entry(byte[] data, long lastModified) {
+      this.data = data;
+      this.lastModified = lastModified;
+    }
+  }
+}
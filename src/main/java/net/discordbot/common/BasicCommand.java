@@ -10,6 +10,9 @@ import java.lang.annotation.RetentionPolicy;
  * \@BasicCommand("describe the command here")
  * public void [commandName](Message messageThatTriggeredTheCommand, other args...) {...}
  *
+ * Commands that reply to Discord should not block on it. Instead, they can return the
+ * CompletionStage of the reply (e.g. `ActionBuilder.submit()`) and its failures will be reported.
+ *
  * At the moment, the only argument types that are allowed are ints, doubles and strings. To change
  * this, please modify `CommandInvoker.CONVERTER`.
  */
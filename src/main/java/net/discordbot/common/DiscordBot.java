@@ -1,25 +1,40 @@
 package net.discordbot.common;
 
 import net.discordbot.util.Config;
+import net.discordbot.util.SharedScheduler;
+import net.dv8tion.jda.core.EmbedBuilder;
 import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.MessageBuilder;
 import net.dv8tion.jda.core.entities.IMentionable;
 import net.dv8tion.jda.core.entities.Message;
 import net.dv8tion.jda.core.entities.MessageChannel;
 import net.dv8tion.jda.core.entities.TextChannel;
-import net.dv8tion.jda.core.requests.RestAction;
 
 import javax.annotation.CheckReturnValue;
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Implements a thin wrapper around a JDA bot for convenience purposes.
  */
 public abstract class DiscordBot {
 
-  private TextChannel mainChannel;
+  /** The queue all bots send their messages through. */
+  private static final OutboundQueue OUTBOUND = new OutboundQueue(SharedScheduler.get());
+
+  /** Discord rejects uploads beyond 8MB, so there is no point in caching larger files. */
+  private static final long MAX_ATTACHMENT_BYTES = 8 << 20;
+
+  private static final long ATTACHMENT_CACHE_BYTES = 64 << 20;
+
+  /** In-memory copies of the files sent by all bots. */
+  private static final AttachmentStore ATTACHMENTS =
+      new AttachmentStore(ATTACHMENT_CACHE_BYTES, MAX_ATTACHMENT_BYTES);
 
-  private TextChannel logChannel;
+  /** The buffer behind the log channel, which is shared by all bots. */
+  private static final LogBuffer LOG = new LogBuffer(OUTBOUND, SharedScheduler.get());
+
+  private TextChannel mainChannel;
 
   /** Create a message for the given channel. */
   @CheckReturnValue
@@ -33,12 +48,6 @@ public abstract class DiscordBot {
     return message(mainChannel);
   }
 
-  /** Create a message for the log channel. */
-  @CheckReturnValue
-  protected ActionBuilder log() {
-    return message(logChannel);
-  }
-
   /** Create a reply for the given `message`. */
   @CheckReturnValue
   protected ActionBuilder reply(Message message) {
@@ -55,9 +64,14 @@ public abstract class DiscordBot {
     return message().say(format, args);
   }
 
-  @CheckReturnValue
-  public ActionBuilder log(String format, Object... args) {
-    return log().say(format, args);
+  /** Appends an entry to the log channel. Entries are written in batches. */
+  public void log(String format, Object... args) {
+    LOG.append(String.format(format, args));
+  }
+
+  /** Appends an exception to the log channel. Repeated exceptions are only written once a batch. */
+  public void logException(String context, Throwable error) {
+    LOG.appendException(context, error);
   }
 
   @CheckReturnValue
@@ -65,11 +79,27 @@ public abstract class DiscordBot {
     return reply(message).say(format, args);
   }
 
+  /** Returns a summary of the state of the outbound message queues. */
+  public static String getOutboundStatistics() {
+    return OUTBOUND.getStatistics();
+  }
+
+  /** Returns a summary of the state of the attachment cache. */
+  public static String getAttachmentStatistics() {
+    return ATTACHMENTS.getStatistics();
+  }
+
   public void prepare(JDA jda, Config cfg) {
     mainChannel = jda.getTextChannelById(cfg.getMainChannelID());
-    logChannel = jda.getTextChannelById(cfg.getLogChannelID());
+    LOG.setChannel(jda.getTextChannelById(cfg.getLogChannelID()));
   }
 
+  /**
+   * Called with the new config when the config file changes after `prepare`. Bots apply the
+   * settings that can change while running, and the others only take effect after a restart.
+   */
+  public void updateConfig(Config cfg) {}
+
   public static final class ActionBuilder {
 
     private final MessageBuilder message;
@@ -78,6 +108,8 @@ public abstract class DiscordBot {
 
     private File file;
 
+    private boolean hasEmbed;
+
     private ActionBuilder(MessageChannel channel) {
       message = new MessageBuilder();
       this.channel = channel;
@@ -89,6 +121,14 @@ public abstract class DiscordBot {
       return this;
     }
 
+    /** Embeds the image at `url`, which lets Discord show an already uploaded file again. */
+    @CheckReturnValue
+    public ActionBuilder embedImage(String url) {
+      message.setEmbed(new EmbedBuilder().setImage(url).build());
+      hasEmbed = true;
+      return this;
+    }
+
     @CheckReturnValue
     public ActionBuilder say(String format, Object... args) {
       message.appendFormat(format, args);
@@ -101,18 +141,31 @@ public abstract class DiscordBot {
       return this;
     }
 
-    @CheckReturnValue
-    private RestAction<Message> execute() {
+    /**
+     * Queues the message on the outbound queue of its channel without blocking. The returned future
+     * completes with the sent message, which plain text shares with the replies merged into it.
+     */
+    public CompletableFuture<Message> submit() {
       Message message = this.message.isEmpty() ? null : this.message.build();
-      return file != null ? channel.sendFile(file, message) : channel.sendMessage(message);
-    }
-
-    public Message now() {
-      return execute().complete();
+      File file = this.file;
+      if (file != null) {
+        byte[] data = ATTACHMENTS.get(file);
+        if (data == null) {
+          return OUTBOUND.send(channel, null, () -> channel.sendFile(file, message));
+        }
+        String fileName = file.getName();
+        return OUTBOUND.send(channel, null, () -> channel.sendFile(data, fileName, message));
+      }
+      String text = message == null || hasEmbed ? null : message.getRawContent();
+      return OUTBOUND.send(channel, text, () -> channel.sendMessage(message));
     }
 
+    /** Queues the message like `submit`, and writes a failure to send it to the log channel. */
     public void soon() {
-      execute().queue();
+      submit().exceptionally(error -> {
+        LOG.appendException("Could not send a message to #" + channel.getName(), error);
+        return null;
+      });
     }
   }
 }
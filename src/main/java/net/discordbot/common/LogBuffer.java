@@ -0,0 +1,129 @@
+package net.discordbot.common;
+
+import net.dv8tion.jda.core.MessageBuilder;
+import net.dv8tion.jda.core.entities.MessageChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects log entries in memory and writes them to the log channel in batches, packing as many
+ * entries as fit into each message. Exceptions with the same stack trace are only written once per
+ * batch, along with the number of times they occurred. Appending never blocks on Discord.
+ */
+final class LogBuffer {
+
+  private static final long FLUSH_PERIOD_MILLISECONDS = 5000;
+
+  private static final int MAX_LENGTH = OutboundQueue.MAX_MESSAGE_LENGTH;
+
+  /** The number of entries held before the oldest ones are dropped. */
+  private static final int MAX_PENDING_ENTRIES = 500;
+
+  /** The number of stack frames written for an exception. */
+  private static final int MAX_STACK_FRAMES = 10;
+
+  private final OutboundQueue outbound;
+
+  /** Pending entries keyed by their deduplication signature. */
+  private final LinkedHashMap<String, Entry> pending = new LinkedHashMap<>();
+
+  private MessageChannel channel;
+
+  private long dropped;
+
+  private long nextEntryID;
+
+  LogBuffer(OutboundQueue outbound, ScheduledExecutorService scheduler) {
+    this.outbound = outbound;
+    scheduler.scheduleWithFixedDelay(
+        this::flush, FLUSH_PERIOD_MILLISECONDS, FLUSH_PERIOD_MILLISECONDS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Sets the channel to write to. Entries are held until a channel is set. */
+  synchronized void setChannel(MessageChannel channel) {
+    this.channel = channel;
+  }
+
+  synchronized void append(String text) {
+    // Plain entries are never merged, so their signature only needs to be unique.
+    add(String.format("#%d", nextEntryID++), text);
+  }
+
+  synchronized void appendException(String context, Throwable error) {
+    String signature = String.format(
+        "%s@%08x", error.getClass().getName(), Arrays.hashCode(error.getStackTrace()));
+    StringBuilder text = new StringBuilder(context).append('\n').append(error);
+    StackTraceElement[] stackTrace = error.getStackTrace();
+    for (int i = 0; i < Math.min(stackTrace.length, MAX_STACK_FRAMES); i++) {
+      text.append("\n    at ").append(stackTrace[i]);
+    }
+    if (stackTrace.length > MAX_STACK_FRAMES) {
+      text.append(String.format("\n    ... %d more", stackTrace.length - MAX_STACK_FRAMES));
+    }
+    add(signature, text.toString());
+  }
+
+  private void add(String signature, String text) {
+    Entry entry = pending.get(signature);
+    if (entry != null) {
+      entry.count++;
+      return;
+    }
+    if (pending.size() == MAX_PENDING_ENTRIES) {
+      pending.remove(pending.keySet().iterator().next());
+      dropped++;
+    }
+    pending.put(signature, new Entry(text));
+  }
+
+  private void flush() {
+    List<String> messages = new ArrayList<>();
+    MessageChannel target;
+    synchronized (this) {
+      if (channel == null || pending.isEmpty()) {
+        return;
+      }
+      target = channel;
+      StringBuilder message = new StringBuilder();
+      if (dropped > 0) {
+        message.append(String.format("(dropped %d log entries)", dropped));
+        dropped = 0;
+      }
+      for (Entry entry : pending.values()) {
+        String text = entry.format();
+        if (message.length() > 0 && message.length() + 1 + text.length() > MAX_LENGTH) {
+          messages.add(message.toString());
+          message.setLength(0);
+        }
+        message.append(message.length() > 0 ? "\n" : "").append(text);
+      }
+      messages.add(message.toString());
+      pending.clear();
+    }
+    for (String text : messages) {
+      String content = text.length() > MAX_LENGTH ? text.substring(0, MAX_LENGTH) : text;
+      outbound.send(
+          target, content, () -> target.sendMessage(new MessageBuilder().append(content).build()));
+    }
+  }
+
+  private static final class Entry {
+
+    private final String text;
+
+    private int count = 1;
+
+    private Entry(String text) {
+      this.text = text;
+    }
+
+    private String format() {
+      return count == 1 ? text : String.format("[x%d] %s", count, text);
+    }
+  }
+}
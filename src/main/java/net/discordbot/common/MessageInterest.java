@@ -0,0 +1,91 @@
+package net.discordbot.common;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collection;
+
+/**
+ * Describes cheaply testable criteria a message has to meet for a TextListener to be interested
+ * in it. A message is offered to a listener if it meets any of the criteria of its interest.
+ */
+public final class MessageInterest {
+
+  private static final MessageInterest EVERYTHING =
+      new MessageInterest(true, ImmutableSet.of(), ImmutableSet.of(), false);
+
+  private static final MessageInterest NOTHING =
+      new MessageInterest(false, ImmutableSet.of(), ImmutableSet.of(), false);
+
+  private final boolean everything;
+
+  private final ImmutableSet<String> prefixes;
+
+  private final ImmutableSet<String> keywords;
+
+  private final boolean digits;
+
+  private MessageInterest(
+      boolean everything,
+      ImmutableSet<String> prefixes,
+      ImmutableSet<String> keywords,
+      boolean digits) {
+    this.everything = everything;
+    this.prefixes = prefixes;
+    this.keywords = keywords;
+    this.digits = digits;
+  }
+
+  /** Interest in all messages. */
+  public static MessageInterest everything() {
+    return EVERYTHING;
+  }
+
+  /** Interest in no message at all. */
+  public static MessageInterest nothing() {
+    return NOTHING;
+  }
+
+  /** Interest in messages that start with one of the `prefixes`. */
+  public static MessageInterest prefixes(String... prefixes) {
+    return new MessageInterest(false, ImmutableSet.copyOf(prefixes), ImmutableSet.of(), false);
+  }
+
+  /** Interest in messages that contain one of the `keywords`, regardless of case. */
+  public static MessageInterest keywords(Collection<String> keywords) {
+    ImmutableSet.Builder<String> lowercaseKeywords = ImmutableSet.builder();
+    for (String keyword : keywords) {
+      lowercaseKeywords.add(keyword.toLowerCase());
+    }
+    return new MessageInterest(false, ImmutableSet.of(), lowercaseKeywords.build(), false);
+  }
+
+  /** Interest in messages that contain at least one digit. */
+  public static MessageInterest digits() {
+    return new MessageInterest(false, ImmutableSet.of(), ImmutableSet.of(), true);
+  }
+
+  /** Returns an interest in the messages that meet either this or the `other` interest. */
+  public MessageInterest or(MessageInterest other) {
+    return new MessageInterest(
+        everything || other.everything,
+        ImmutableSet.<String>builder().addAll(prefixes).addAll(other.prefixes).build(),
+        ImmutableSet.<String>builder().addAll(keywords).addAll(other.keywords).build(),
+        digits || other.digits);
+  }
+
+  public boolean isEverything() {
+    return everything;
+  }
+
+  public ImmutableSet<String> getPrefixes() {
+    return prefixes;
+  }
+
+  public ImmutableSet<String> getKeywords() {
+    return keywords;
+  }
+
+  public boolean isDigits() {
+    return digits;
+  }
+}
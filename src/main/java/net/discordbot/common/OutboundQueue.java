@@ -0,0 +1,207 @@
+package net.discordbot.common;
+
+import net.dv8tion.jda.core.MessageBuilder;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.MessageChannel;
+import net.dv8tion.jda.core.requests.RestAction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Sends all outgoing messages through a queue per channel. Adjacent plain-text messages to the same
+ * channel that are queued within a short window of each other are merged into one message, and
+ * every channel is kept within the Discord rate limit instead of relying on JDA to hold back
+ * requests.
+ */
+final class OutboundQueue {
+
+  /** The maximum number of characters Discord accepts in a single message. */
+  static final int MAX_MESSAGE_LENGTH = 2000;
+
+  /** How long plain text waits for more text to be merged with. */
+  private static final long LINGER_MILLISECONDS = 100;
+
+  /** Discord allows this many messages per channel within `RATE_LIMIT_WINDOW_MILLISECONDS`. */
+  private static final int RATE_LIMIT_MESSAGES = 5;
+
+  private static final long RATE_LIMIT_WINDOW_MILLISECONDS = 5000;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final ConcurrentHashMap<Long, ChannelQueue> channels = new ConcurrentHashMap<>();
+
+  private final AtomicLong queued = new AtomicLong();
+
+  private final AtomicLong messages = new AtomicLong();
+
+  private final AtomicLong requests = new AtomicLong();
+
+  private final AtomicLong failures = new AtomicLong();
+
+  private final AtomicLong totalLatencyMillis = new AtomicLong();
+
+  private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+  OutboundQueue(ScheduledExecutorService scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Queues a message for `channel`. `text` is the content of a plain-text message that may be
+   * merged with its neighbours, or null if the message has to be sent on its own by `action`.
+   */
+  CompletableFuture<Message> send(
+      MessageChannel channel, String text, Supplier<RestAction<Message>> action) {
+    Pending pending = new Pending(text, action);
+    channels.computeIfAbsent(channel.getIdLong(), id -> new ChannelQueue(channel)).add(pending);
+    return pending.result;
+  }
+
+  String getStatistics() {
+    long sent = messages.get();
+    return String.format(
+        "outbound: %d queued, %d sent in %d requests, %d failed, latency avg %dms max %dms",
+        queued.get(),
+        sent,
+        requests.get(),
+        failures.get(),
+        sent == 0 ? 0 : totalLatencyMillis.get() / sent,
+        maxLatencyMillis.get());
+  }
+
+  private void recordLatency(Pending pending) {
+    long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pending.queuedNanos);
+    totalLatencyMillis.addAndGet(latency);
+    maxLatencyMillis.accumulateAndGet(latency, Math::max);
+  }
+
+  private static final class Pending {
+
+    private final String text;
+
+    private final Supplier<RestAction<Message>> action;
+
+    private final CompletableFuture<Message> result = new CompletableFuture<>();
+
+    private final long queuedNanos = System.nanoTime();
+
+    private Pending(String text, Supplier<RestAction<Message>> action) {
+      this.text = text;
+      this.action = action;
+    }
+  }
+
+  private final class ChannelQueue {
+
+    private final MessageChannel channel;
+
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+    /** Times of the most recent sends in milliseconds, used as a ring buffer. */
+    private final long[] recentSends = new long[RATE_LIMIT_MESSAGES];
+
+    private int nextSend;
+
+    private boolean scheduled;
+
+    private ChannelQueue(MessageChannel channel) {
+      this.channel = channel;
+    }
+
+    private synchronized void add(Pending message) {
+      pending.add(message);
+      queued.incrementAndGet();
+      if (!scheduled) {
+        scheduled = true;
+        scheduler.schedule(
+            this::flush, message.text != null ? LINGER_MILLISECONDS : 0, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    private void flush() {
+      while (true) {
+        List<Pending> batch;
+        synchronized (this) {
+          if (pending.isEmpty()) {
+            scheduled = false;
+            return;
+          }
+          long now = System.currentTimeMillis();
+          long wait = recentSends[nextSend] + RATE_LIMIT_WINDOW_MILLISECONDS - now;
+          if (wait > 0) {
+            scheduler.schedule(this::flush, wait, TimeUnit.MILLISECONDS);
+            return;
+          }
+          recentSends[nextSend] = now;
+          nextSend = (nextSend + 1) % RATE_LIMIT_MESSAGES;
+          batch = takeBatch();
+        }
+        dispatch(batch);
+      }
+    }
+
+    /** Removes the next message and all plain-text messages that can be merged into it. */
+    private List<Pending> takeBatch() {
+      List<Pending> batch = new ArrayList<>();
+      Pending first = pending.poll();
+      batch.add(first);
+      if (first.text != null) {
+        int length = first.text.length();
+        while (!pending.isEmpty()
+            && pending.peek().text != null
+            && length + 1 + pending.peek().text.length() <= MAX_MESSAGE_LENGTH) {
+          length += 1 + pending.peek().text.length();
+          batch.add(pending.poll());
+        }
+      }
+      queued.addAndGet(-batch.size());
+      return batch;
+    }
+
+    private void dispatch(List<Pending> batch) {
+      RestAction<Message> action;
+      try {
+        action = batch.size() == 1 ? batch.get(0).action.get() : merge(batch);
+      } catch (RuntimeException e) {
+        fail(batch, e);
+        return;
+      }
+      requests.incrementAndGet();
+      action.queue(
+          message -> {
+            for (Pending sent : batch) {
+              messages.incrementAndGet();
+              recordLatency(sent);
+              sent.result.complete(message);
+            }
+          },
+          error -> fail(batch, error));
+    }
+
+    private RestAction<Message> merge(List<Pending> batch) {
+      MessageBuilder merged = new MessageBuilder();
+      for (int i = 0; i < batch.size(); i++) {
+        if (i > 0) {
+          merged.append("\n");
+        }
+        merged.append(batch.get(i).text);
+      }
+      return channel.sendMessage(merged.build());
+    }
+
+    private void fail(List<Pending> batch, Throwable error) {
+      for (Pending failed : batch) {
+        failures.incrementAndGet();
+        failed.result.completeExceptionally(error);
+      }
+    }
+  }
+}
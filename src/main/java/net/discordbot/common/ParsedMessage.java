@@ -0,0 +1,75 @@
+package net.discordbot.common;
+
+import net.dv8tion.jda.core.entities.Message;
+
+/**
+ * Normalized view of a message that is shared by all TextListeners, so the content is only copied
+ * and scanned once per message. Every view is computed lazily on first use. Instances are confined
+ * to the thread that processes the message and are not thread-safe.
+ */
+public final class ParsedMessage {
+
+  /** The value of `numberStart` before the content was scanned for numbers. */
+  private static final int NOT_SCANNED = -2;
+
+  private static final int NO_NUMBER = -1;
+
+  private final String content;
+
+  /** Where the first number in the content begins, or NO_NUMBER. */
+  private int numberStart = NOT_SCANNED;
+
+  public ParsedMessage(String content) {
+    this.content = content;
+  }
+
+  public static ParsedMessage of(Message message) {
+    return new ParsedMessage(message.getContent());
+  }
+
+  /** Returns the raw content of the message. */
+  public String getContent() {
+    return content;
+  }
+
+  /** Returns true if the message contains at least one digit. */
+  public boolean hasDigit() {
+    return getFirstNumberStart() != NO_NUMBER;
+  }
+
+  /**
+   * Returns where the first number of the form `-?[0-9]*[.,]?[0-9]+` begins, including its sign and
+   * leading decimal separator, or -1 if the message has no digit.
+   */
+  public int getFirstNumberStart() {
+    if (numberStart == NOT_SCANNED) {
+      numberStart = findFirstNumber(content);
+    }
+    return numberStart;
+  }
+
+  private static int findFirstNumber(String content) {
+    int start = 0;
+    while (start < content.length() && !isDigit(content.charAt(start))) {
+      start++;
+    }
+    if (start == content.length()) {
+      return NO_NUMBER;
+    }
+    if (start > 0 && isSeparator(content.charAt(start - 1))) {
+      start--;
+    }
+    if (start > 0 && content.charAt(start - 1) == '-') {
+      start--;
+    }
+    return start;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isSeparator(char c) {
+    return c == '.' || c == ',';
+  }
+}
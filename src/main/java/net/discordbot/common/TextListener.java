@@ -6,8 +6,19 @@ import net.dv8tion.jda.core.entities.MessageReaction;
 /** Acts on message activity in Discord. */
 public interface TextListener {
 
-  /** Parses a message and returns true if there is a hit and a response was issued. */
-  default boolean parseMessage(Message message) {
+  /**
+   * Returns the criteria a message has to meet to be offered to `parseMessage`. Listeners may
+   * return a different instance whenever their criteria change.
+   */
+  default MessageInterest getInterest() {
+    return MessageInterest.everything();
+  }
+
+  /**
+   * Parses a message and returns true if there is a hit and a response was issued. The `parsed`
+   * view of the content is shared with the other listeners.
+   */
+  default boolean parseMessage(Message message, ParsedMessage parsed) {
     return false;
   }
 
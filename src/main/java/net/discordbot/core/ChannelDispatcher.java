@@ -0,0 +1,93 @@
+package net.discordbot.core;
+
+import com.google.common.base.Verify;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs message processing off the JDA event thread. Work is striped by channel ID onto a fixed set
+ * of single-threaded workers, so events of the same channel are processed in order while different
+ * channels are processed in parallel. Each worker has a bounded queue and events that do not fit
+ * are shed.
+ */
+final class ChannelDispatcher {
+
+  /** The number of events a single worker can hold before it starts shedding. */
+  private static final int QUEUE_CAPACITY = 256;
+
+  private final ThreadPoolExecutor[] workers;
+
+  private final AtomicLong dispatched = new AtomicLong();
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  /** Reports the exceptions thrown by tasks. */
+  private final BiConsumer<String, Throwable> errorLog;
+
+  ChannelDispatcher(int workerCount, BiConsumer<String, Throwable> errorLog) {
+    Verify.verify(workerCount > 0, "Dispatcher needs at least one worker!");
+    this.errorLog = errorLog;
+    workers = new ThreadPoolExecutor[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      workers[i] = new ThreadPoolExecutor(
+          1,
+          1,
+          0,
+          TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+          new ThreadFactoryBuilder()
+              .setNameFormat(String.format("channel-worker-%d", i))
+              .setDaemon(true)
+              .build(),
+          new ThreadPoolExecutor.AbortPolicy());
+    }
+  }
+
+  /** Queues `task` behind all pending work of the channel. Returns false if the event was shed. */
+  boolean dispatch(long channelID, Runnable task) {
+    try {
+      workers[stripe(channelID)].execute(() -> runSafely(task));
+    } catch (RejectedExecutionException e) {
+      dropped.incrementAndGet();
+      return false;
+    }
+    dispatched.incrementAndGet();
+    return true;
+  }
+
+  private int stripe(long channelID) {
+    // Snowflakes have their low bits dominated by the worker and sequence IDs, so mix them first.
+    long hash = channelID ^ (channelID >>> 22);
+    return (int) Math.floorMod(hash * 0x9E3779B97F4A7C15L >>> 32, (long) workers.length);
+  }
+
+  private void runSafely(Runnable task) {
+    try {
+      task.run();
+    } catch (RuntimeException e) {
+      // A failing listener must not take down the worker of the whole stripe.
+      errorLog.accept("Failed to process a message", e);
+    }
+  }
+
+  /** Returns the number of events waiting to be processed across all channels. */
+  int getQueueDepth() {
+    int depth = 0;
+    for (ThreadPoolExecutor worker : workers) {
+      depth += worker.getQueue().size();
+    }
+    return depth;
+  }
+
+  String getStatistics() {
+    return String.format(
+        "dispatcher: %d workers, %d queued, %d dispatched, %d dropped",
+        workers.length, getQueueDepth(), dispatched.get(), dropped.get());
+  }
+}
@@ -6,35 +6,42 @@ import net.discordbot.common.BasicCommand;
 import net.discordbot.common.DiscordBot;
 import net.dv8tion.jda.core.entities.Message;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
-/** Defines and runs DiscordBot commands. */
+/**
+ * Defines and runs DiscordBot commands. Each command is compiled into a method handle bound to its
+ * bot once, so running it does not go through reflection.
+ */
 public final class CommandInvoker {
 
   /**
    * Maps classes to their converter from a string.
    */
-  private static final Map<Class, Function<String, Object>> CONVERTER = new HashMap<>();
+  private static final Map<Class, CommandParser.ArgumentParser> CONVERTER = new HashMap<>();
 
-  private final List<Function<String, Object>> types = new ArrayList<>();
+  /** The type every command handle is adapted to: (Message, Object[] arguments) -> Object. */
+  private static final MethodType INVOKER_TYPE =
+      MethodType.methodType(Object.class, Message.class, Object[].class);
 
-  private final DiscordBot bot;
+  /** Converters for all arguments following the message, resolved once at registration. */
+  private final CommandParser.ArgumentParser[] types;
 
-  private final Method method;
+  private final MethodHandle invoker;
 
   private final String name;
 
+  private final String description;
+
   public CommandInvoker(DiscordBot bot, Method method, String name) {
-    this.bot = bot;
-    this.method = method;
     this.name = name;
     int modifiers = method.getModifiers();
 
@@ -54,12 +61,28 @@ public final class CommandInvoker {
         parameters.length > 0 && parameters[0].equals(Message.class),
         "First argument of %s should be a Message type.",
         method);
-    Arrays.stream(parameters).skip(1).forEach(
-        clazz -> types.add(
-            Verify.verifyNotNull(
-                CONVERTER.get(clazz),
-                "Parameters of type %s are not allowed in DiscordBot commands.",
-                 clazz.getName())));
+    types = Arrays.stream(parameters).skip(1).map(
+        clazz -> Verify.verifyNotNull(
+            CONVERTER.get(clazz),
+            "Parameters of type %s are not allowed in DiscordBot commands.",
+            clazz.getName()))
+        .toArray(CommandParser.ArgumentParser[]::new);
+
+    try {
+      invoker = MethodHandles.lookup().unreflect(method)
+          .bindTo(bot)
+          .asSpreader(Object[].class, types.length)
+          .asType(INVOKER_TYPE);
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException(String.format("%s is not accessible!", method), e);
+    }
+
+    description = String.format(
+        "%s(%s): %s",
+        name,
+        Joiner.on(", ").join(
+            Arrays.stream(parameters).skip(1).map(Class::getSimpleName).iterator()),
+        method.getAnnotation(BasicCommand.class).value());
   }
 
   /** Returns true if `method` represents a DiscordBot command. */
@@ -68,62 +91,39 @@ public final class CommandInvoker {
   }
 
   /**
-   * Runs command on the given string argument (broken into words). Returns true if successful.
+   * Runs command on the arguments found in `content` from `start` (broken into words). Returns
+   * null if the arguments do not fit the command. Otherwise, returns a stage that completes once
+   * the command is done: immediately for synchronous commands, or along with the CompletionStage
+   * returned by asynchronous ones. Failures of the command complete the stage exceptionally.
    */
-  public boolean run(Message message, String argument) {
-    ArrayList<Object> params = new ArrayList<>();
-    params.add(message);
-
-    if (!fill(params, argument)) {
-      return false;
+  public CompletionStage<?> run(Message message, String content, int start) {
+    Object[] params = new Object[types.length];
+    if (!CommandParser.fill(types, params, content, start)) {
+      return null;
     }
+    Object result;
     try {
-      method.invoke(bot, params.toArray());
-    } catch (IllegalAccessException | InvocationTargetException e) {
-      // Invocation failed. Mark failure and proceed.
-      e.printStackTrace(System.err);
-      return false;
+      result = (Object) invoker.invokeExact(message, params);
+    } catch (Throwable e) {
+      return CompletableFuture.failedFuture(e);
     }
-    return true;
+    if (result instanceof CompletionStage) {
+      return (CompletionStage<?>) result;
+    }
+    return CompletableFuture.completedFuture(result);
   }
 
-  /**
-   * Extracts arguments out of `argument` and converts them into parameters. Returns true if
-   * successful.
-   */
-  private boolean fill(ArrayList<Object> params, String argument) {
-    if (argument.isEmpty() || types.isEmpty()) {
-      // Can successfully fill only if there is nothing to fill.
-      return argument.isEmpty() && types.isEmpty();
-    }
-    String[] args = argument.split("\\W+", types.size());
-    if (args.length != types.size()) {
-      // `argument` does not have enough words.
-      return false;
-    }
-    for (int i = 0; i < types.size(); i++) {
-      try {
-        params.add(types.get(i).apply(args[i]));
-      } catch (Throwable e) {
-        e.printStackTrace(System.err);
-        return false;
-      }
-    }
-    return true;
+  public String getName() {
+    return name;
   }
 
   public String getDescription() {
-    return String.format(
-        "%s(%s): %s",
-        name,
-        Joiner.on(", ").join(
-            Arrays.stream(method.getParameterTypes()).skip(1).map(Class::getSimpleName).iterator()),
-        method.getAnnotation(BasicCommand.class).value());
+    return description;
   }
 
   static {
-    CONVERTER.put(String.class, String::trim);
-    CONVERTER.put(Integer.class, Integer::decode);
-    CONVERTER.put(Double.class, Double::parseDouble);
+    CONVERTER.put(String.class, CommandParser::parseString);
+    CONVERTER.put(Integer.class, CommandParser::parseInt);
+    CONVERTER.put(Double.class, CommandParser::parseDouble);
   }
 }
@@ -1,29 +1,42 @@
 package net.discordbot.core;
 
-import com.google.common.base.Joiner;
 import com.google.common.base.Verify;
 import net.discordbot.common.BasicCommand;
 import net.discordbot.common.DiscordBot;
+import net.discordbot.common.MessageInterest;
+import net.discordbot.common.ParsedMessage;
 import net.discordbot.common.TextListener;
+import net.discordbot.util.SharedScheduler;
 import net.dv8tion.jda.core.entities.Message;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
 
 final class CommandManager extends DiscordBot implements TextListener{
 
-  /** Lists all sequences that indicate a DiscordBot command. */
-  private static final String[] COMMAND_MARKERS = {"sudo +", "!","`","\\\\"};
-
-  private static final Pattern IS_COMMAND =
-      Pattern.compile(String.format("(%s)([a-zA-Z]+)(.*)", Joiner.on('|').join(COMMAND_MARKERS)));
+  /** Prefixes shared by all messages that start with a command marker of `CommandParser`. */
+  private static final MessageInterest INTEREST = MessageInterest.prefixes("sudo ", "!", "`", "\\");
 
   private final Map<String, CommandInvoker> commands = new HashMap<>();
 
+  /** Sources of runtime statistics that are reported by the `stats` command. */
+  private final List<Supplier<String>> statistics = new ArrayList<>();
+
+  /** Removes the messages that issued commands. */
+  private final MessageDeleter deleter = new MessageDeleter(SharedScheduler.get());
+
+  CommandManager() {
+    registerStatistics(deleter::getStatistics);
+  }
+
   /** Adds all DiscordBot commands held by the bot instance. */
   void registerCommands(DiscordBot bot) {
     for (Method method : bot.getClass().getDeclaredMethods()) {
@@ -35,27 +48,69 @@ final class CommandManager extends DiscordBot implements TextListener{
     }
   }
 
+  /** Adds a source of runtime statistics to the `stats` command. */
+  void registerStatistics(Supplier<String> source) {
+    statistics.add(source);
+  }
+
+  @Override
+  public MessageInterest getInterest() {
+    return INTEREST;
+  }
+
   /**
    * Parses `message` and runs the registered commands on it and returns whether a command was
    * parsed or not.
    */
   @Override
-  public boolean parseMessage(Message message) {
-    Matcher commandMatcher = IS_COMMAND.matcher(message.getContent());
-    if (!commandMatcher.matches()) {
+  public boolean parseMessage(Message message, ParsedMessage parsed) {
+    String content = parsed.getContent();
+    int nameStart = CommandParser.findCommandName(content);
+    int nameEnd = nameStart < 0 ? nameStart : CommandParser.findNameEnd(content, nameStart);
+    if (nameEnd <= nameStart || !CommandParser.isSingleLine(content, nameEnd)) {
       // Message does not have the command format. Abort.
       return false;
     }
 
-    CommandInvoker command = commands.get(commandMatcher.group(2).toLowerCase());
-    if (command == null || !command.run(message, commandMatcher.group(3))) {
+    CommandInvoker command = findCommand(content, nameStart, nameEnd);
+    if (command == null || !runCommand(command, message, content, nameEnd)) {
       reply(message)
-          .say("Could not resolve command \"%s\"! ", commandMatcher.group(2))
+          .say("Could not resolve command \"%s\"! ", content.substring(nameStart, nameEnd))
           .say("Run *help* for a list of available commands")
-          .now();
+          .soon();
+    }
+    log("[%s]: %s", getNameOfAuthor(message), parsed.getContent());
+    deleter.delete(message);
+    return true;
+  }
+
+  /** Looks up the command named by `content` in [start, end), regardless of case. */
+  private CommandInvoker findCommand(String content, int start, int end) {
+    int length = end - start;
+    for (Map.Entry<String, CommandInvoker> command : commands.entrySet()) {
+      String name = command.getKey();
+      if (name.length() == length && name.regionMatches(true, 0, content, start, length)) {
+        return command.getValue();
+      }
     }
-    log("[%s]: %s", getNameOfAuthor(message), message.getContent()).soon();
-    message.delete().queue();
+    return null;
+  }
+
+  /**
+   * Runs `command` and returns whether its arguments could be resolved. Failures of the command
+   * itself are reported on the log channel once they happen.
+   */
+  private boolean runCommand(CommandInvoker command, Message message, String content, int start) {
+    CompletionStage<?> result = command.run(message, content, start);
+    if (result == null) {
+      return false;
+    }
+    result.whenComplete((unused, error) -> {
+      if (error != null) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        logException(String.format("Command \"%s\" failed", command.getName()), cause);
+      }
+    });
     return true;
   }
 
@@ -65,11 +120,20 @@ final class CommandManager extends DiscordBot implements TextListener{
   }
 
   @BasicCommand("writes this list")
-  public void help(Message message) {
+  public CompletableFuture<Message> help(Message message) {
     ActionBuilder action = reply(message);
     for (CommandInvoker cmd : commands.values()) {
       action = action.say("\n%s", cmd.getDescription());
     }
-    action.now();
+    return action.submit();
+  }
+
+  @BasicCommand("reports internal statistics")
+  public CompletableFuture<Message> stats(Message message) {
+    ActionBuilder action = reply(message);
+    for (Supplier<String> source : statistics) {
+      action = action.say("\n%s", source.get());
+    }
+    return action.submit();
   }
 }
@@ -0,0 +1,220 @@
+package net.discordbot.core;
+
+/**
+ * Hand-written scanner for DiscordBot commands. It accepts the same messages as
+ * `(sudo +|!|`|\\)([a-zA-Z]+)(.*)` and splits arguments the same way as `split("\\W+", n)`, but
+ * works on offsets into the content instead of building intermediate strings.
+ */
+final class CommandParser {
+
+  private static final String SUDO = "sudo";
+
+  private CommandParser() {}
+
+  /** Converts the characters of `content` in [start, end) into an argument value. */
+  @FunctionalInterface
+  interface ArgumentParser {
+
+    /** Returns the parsed value or null if the characters do not represent a valid value. */
+    Object parse(String content, int start, int end);
+  }
+
+  /**
+   * Returns the offset where the name of the command starts or -1 if `content` does not start with
+   * one of the command markers.
+   */
+  static int findCommandName(String content) {
+    if (content.isEmpty()) {
+      return -1;
+    }
+    switch (content.charAt(0)) {
+      case '!':
+      case '`':
+      case '\\':
+        return 1;
+      default:
+        break;
+    }
+    if (!content.startsWith(SUDO)) {
+      return -1;
+    }
+    int pos = SUDO.length();
+    while (pos < content.length() && content.charAt(pos) == ' ') {
+      pos++;
+    }
+    return pos > SUDO.length() ? pos : -1;
+  }
+
+  /** Returns the end of the command name starting at `start`, which is `start` if there is none. */
+  static int findNameEnd(String content, int start) {
+    int pos = start;
+    while (pos < content.length() && isLetter(content.charAt(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+
+  /** Returns true if there are no line terminators in `content` after `start`. */
+  static boolean isSingleLine(String content, int start) {
+    for (int pos = start; pos < content.length(); pos++) {
+      switch (content.charAt(pos)) {
+        case '\n':
+        case '\r':
+        case '\u0085':
+        case '\u2028':
+        case '\u2029':
+          return false;
+        default:
+          break;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Extracts arguments out of `content` from `start` and converts them with `parsers` into
+   * `values`. Words are split the same way as `split("\\W+", parsers.length)` would: the last
+   * value receives the rest of the content. Returns true if successful.
+   */
+  static boolean fill(ArgumentParser[] parsers, Object[] values, String content, int start) {
+    boolean noArgument = start == content.length();
+    if (noArgument || parsers.length == 0) {
+      // Can successfully fill only if there is nothing to fill.
+      return noArgument && parsers.length == 0;
+    }
+    int pos = start;
+    for (int i = 0; i < parsers.length; i++) {
+      int end = content.length();
+      if (i < parsers.length - 1) {
+        end = skipWord(content, pos);
+        if (end == content.length()) {
+          // `content` does not have enough words.
+          return false;
+        }
+      }
+      values[i] = parsers[i].parse(content, pos, end);
+      if (values[i] == null) {
+        // The word does not represent a value of the expected type.
+        return false;
+      }
+      pos = skipSeparator(content, end);
+    }
+    return true;
+  }
+
+  /** Returns the end of the run of word characters (`\\w`) starting at `start`. */
+  private static int skipWord(String content, int start) {
+    int pos = start;
+    while (pos < content.length() && isWordCharacter(content.charAt(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+
+  /** Returns the end of the run of non-word characters (`\\W`) starting at `start`. */
+  private static int skipSeparator(String content, int start) {
+    int pos = start;
+    while (pos < content.length() && !isWordCharacter(content.charAt(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+
+  /** Parses an int with the same syntax as `Integer.decode`. */
+  static Integer parseInt(String content, int start, int end) {
+    int pos = start;
+    boolean negative = false;
+    if (pos < end && (content.charAt(pos) == '-' || content.charAt(pos) == '+')) {
+      negative = content.charAt(pos) == '-';
+      pos++;
+    }
+    int radix = 10;
+    if (content.startsWith("0x", pos) || content.startsWith("0X", pos)) {
+      radix = 16;
+      pos += 2;
+    } else if (content.startsWith("#", pos)) {
+      radix = 16;
+      pos++;
+    } else if (content.startsWith("0", pos) && pos + 1 < end) {
+      radix = 8;
+      pos++;
+    }
+    if (pos >= end) {
+      return null;
+    }
+    long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+    long value = 0;
+    for (; pos < end; pos++) {
+      int digit = Character.digit(content.charAt(pos), radix);
+      if (digit < 0) {
+        return null;
+      }
+      value = value * radix + digit;
+      if (value > limit) {
+        return null;
+      }
+    }
+    return (int) (negative ? -value : value);
+  }
+
+  /**
+   * Parses a double with the same result as `Double.parseDouble`. Plain decimals with few digits
+   * are converted directly, everything else is delegated to the JDK.
+   */
+  static Double parseDouble(String content, int start, int end) {
+    // Every integer below 10^15 and every power of ten up to 10^22 is exact as a double, so a
+    // single division rounds correctly.
+    final int maxDigits = 15;
+    int pos = start;
+    boolean negative = false;
+    if (pos < end && (content.charAt(pos) == '-' || content.charAt(pos) == '+')) {
+      negative = content.charAt(pos) == '-';
+      pos++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int decimals = -1;
+    for (; pos < end; pos++) {
+      char c = content.charAt(pos);
+      if (c >= '0' && c <= '9') {
+        mantissa = mantissa * 10 + (c - '0');
+        digits++;
+        if (decimals >= 0) {
+          decimals++;
+        }
+      } else if (c == '.' && decimals < 0) {
+        decimals = 0;
+      } else {
+        break;
+      }
+    }
+    if (pos == end && digits > 0 && digits <= maxDigits) {
+      double value = decimals > 0 ? mantissa / Math.pow(10, decimals) : mantissa;
+      return negative ? -value : value;
+    }
+    try {
+      return Double.parseDouble(content.substring(start, end));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** Returns the trimmed characters as a string. */
+  static String parseString(String content, int start, int end) {
+    while (start < end && content.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && content.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return content.substring(start, end);
+  }
+
+  private static boolean isLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isWordCharacter(char c) {
+    return isLetter(c) || (c >= '0' && c <= '9') || c == '_';
+  }
+}
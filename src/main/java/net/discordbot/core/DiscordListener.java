@@ -1,10 +1,12 @@
 package net.discordbot.core;
 
-import com.google.common.base.Joiner;
 import net.discordbot.common.DiscordBot;
+import net.discordbot.common.ParsedMessage;
 import net.discordbot.common.TextListener;
 import net.discordbot.common.VoiceListener;
 import net.discordbot.util.Config;
+import net.discordbot.util.PersistenceManager;
+import net.discordbot.util.PersistenceService;
 import net.dv8tion.jda.client.events.call.voice.CallVoiceJoinEvent;
 import net.dv8tion.jda.client.events.call.voice.CallVoiceLeaveEvent;
 import net.dv8tion.jda.core.JDA;
@@ -20,12 +22,31 @@ import net.dv8tion.jda.core.events.message.react.MessageReactionRemoveEvent;
 import net.dv8tion.jda.core.hooks.ListenerAdapter;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Stream;
 
 public final class DiscordListener extends ListenerAdapter {
 
+  /** The number of channel stripes that can process messages in parallel. */
+  private static final int MESSAGE_WORKERS = 4;
+
+  /** The number of threads that fan reaction and voice events out to the bots. */
+  private static final int FAN_OUT_WORKERS = 2;
+
+  /** The number of recently processed messages whose content is remembered. */
+  private static final int PROCESSED_CACHE_SIZE = 1 << 14;
+
+  private final ChannelDispatcher dispatcher =
+      new ChannelDispatcher(MESSAGE_WORKERS, this::logException);
+
+  private final MessageRouter router = new MessageRouter();
+
+  private final FanOutExecutor fanOut = new FanOutExecutor(FAN_OUT_WORKERS, this::logException);
+
+  private final ReactionCoalescer reactions = new ReactionCoalescer(fanOut, this::processReaction);
+
+  /** Recently processed messages, used to tell real edits from embed updates. */
+  private final ProcessedMessages processedMessages = new ProcessedMessages(PROCESSED_CACHE_SIZE);
+
   private final CommandManager cmdManager = new CommandManager();
 
   private final List<DiscordBot> bots = new ArrayList<>();
@@ -34,10 +55,21 @@ public final class DiscordListener extends ListenerAdapter {
 
   private final List<VoiceListener> voiceBots = new ArrayList<>();
 
-  private final Config cfg;
+  private volatile Config cfg;
+
+  /** Whether the bots were prepared, after which config changes are passed on to them. */
+  private volatile boolean ready;
 
   public DiscordListener(Config cfg) {
     addBot(cmdManager);
+    cmdManager.registerStatistics(dispatcher::getStatistics);
+    cmdManager.registerStatistics(DiscordBot::getOutboundStatistics);
+    cmdManager.registerStatistics(DiscordBot::getAttachmentStatistics);
+    cmdManager.registerStatistics(fanOut::getStatistics);
+    cmdManager.registerStatistics(reactions::getStatistics);
+    cmdManager.registerStatistics(PersistenceManager::getAllStatistics);
+    cmdManager.registerStatistics(PersistenceService.get()::getStatistics);
+    PersistenceService.get().setErrorLog(this::logException);
     this.cfg = cfg;
   }
 
@@ -46,6 +78,7 @@ public final class DiscordListener extends ListenerAdapter {
     bots.add(bot);
     if (bot instanceof TextListener) {
       textBots.add((TextListener) bot);
+      router.addListener((TextListener) bot);
     }
     if (bot instanceof VoiceListener) {
       voiceBots.add((VoiceListener) bot);
@@ -53,52 +86,99 @@ public final class DiscordListener extends ListenerAdapter {
     return this;
   }
 
-  /** Handles the processing of new and old messages. */
-  private void processMessage(Message message) {
-    // Needs to happen sequentially.
-    for (TextListener textBot : textBots) {
-      if (textBot.parseMessage(message)) {
-        return;
+  /** Queues the processing of `message` behind the pending messages of its channel. */
+  private void dispatchMessage(Message message, boolean isEdit) {
+    dispatcher.dispatch(message.getChannel().getIdLong(), () -> processMessage(message, isEdit));
+  }
+
+  /**
+   * Handles the processing of new and edited messages. Edits that leave the content unchanged
+   * (e.g. embeds being added) are dropped, and real edits are not offered again to the listener
+   * that already responded to the message.
+   */
+  private void processMessage(Message message, boolean isEdit) {
+    ParsedMessage parsed = ParsedMessage.of(message);
+    int contentHash = parsed.getContent().hashCode();
+    int skipped = ProcessedMessages.NO_HANDLER;
+    if (isEdit) {
+      long previous = processedMessages.get(message.getIdLong());
+      if (previous != ProcessedMessages.MISSING) {
+        if (ProcessedMessages.getContentHash(previous) == contentHash) {
+          return;
+        }
+        skipped = ProcessedMessages.getHandler(previous);
       }
     }
+
+    // Needs to happen sequentially, in the order of priority.
+    int handler = skipped;
+    long candidates = router.route(parsed);
+    for (int i = 0; candidates != 0; i++, candidates >>>= 1) {
+      if ((candidates & 1) != 0 && i != skipped && textBots.get(i).parseMessage(message, parsed)) {
+        handler = i;
+        break;
+      }
+    }
+    processedMessages.put(message.getIdLong(), contentHash, handler);
   }
 
-  /** Handles the processing of message reactions. */
+  /** Handles the processing of the coalesced reactions to a message. */
   private void processReaction(MessageReaction reaction, int factor) {
-    textBots.parallelStream().forEach(bot -> bot.parseReaction(reaction, factor));
+    for (TextListener textBot : textBots) {
+      textBot.parseReaction(reaction, factor);
+    }
   }
 
   /** Handles the processing of voice channel events. */
   private void processVoiceEvent(Event event) {
-    voiceBots.parallelStream().forEach(bot -> bot.processVoiceEvent(event));
+    for (VoiceListener voiceBot : voiceBots) {
+      fanOut.execute(() -> voiceBot.processVoiceEvent(event));
+    }
   }
 
   @Override
   public void onMessageReceived(MessageReceivedEvent event) {
-    processMessage(event.getMessage());
+    dispatchMessage(event.getMessage(), false);
   }
 
   @Override
   public void onMessageUpdate(MessageUpdateEvent event) {
-    processMessage(event.getMessage());
+    dispatchMessage(event.getMessage(), true);
   }
 
 
   @Override
   public void onMessageReactionAdd(MessageReactionAddEvent event) {
-    processReaction(event.getReaction(), 1);
+    reactions.add(event.getReaction(), 1);
   }
 
   @Override
   public void onMessageReactionRemove(MessageReactionRemoveEvent event) {
-    processReaction(event.getReaction(), -1);
+    reactions.add(event.getReaction(), -1);
   }
 
   @Override
   public void onReady(ReadyEvent event) {
     JDA jda = event.getJDA();
-    bots.parallelStream().forEach(bot -> bot.prepare(jda, cfg));
-    getDiscordBot().log("I have respawned.").soon();
+    List<Runnable> preparations = new ArrayList<>();
+    Config prepared = cfg;
+    bots.forEach(bot -> preparations.add(() -> bot.prepare(jda, prepared)));
+    fanOut.runAll(preparations);
+    ready = true;
+    if (cfg != prepared) {
+      // The config changed while the bots were being prepared.
+      bots.forEach(bot -> bot.updateConfig(cfg));
+    }
+    getDiscordBot().log("I have respawned.");
+  }
+
+  /** Passes a new config on to all bots. Bots that are not prepared yet are prepared with it. */
+  public void updateConfig(Config cfg) {
+    this.cfg = cfg;
+    if (ready) {
+      bots.forEach(bot -> bot.updateConfig(cfg));
+      getDiscordBot().log("Reloaded the config.");
+    }
   }
 
   @Override
@@ -113,10 +193,12 @@ public final class DiscordListener extends ListenerAdapter {
 
   @Override
   public void onException(ExceptionEvent event) {
-    Stream<StackTraceElement> stackTrace = Arrays.stream(event.getCause().getStackTrace());
-    getDiscordBot().log("Encountered exception while parsing a message!")
-        .say(Joiner.on('\n').join(stackTrace.map(StackTraceElement::toString).toArray(String[]::new)))
-        .now();
+    logException("Encountered exception while parsing a message!", event.getCause());
+  }
+
+  /** Appends an exception to the log channel, like DiscordBot.logException. */
+  public void logException(String context, Throwable error) {
+    getDiscordBot().logException(context, error);
   }
 
   /** Returns a DiscordBot that the listener can use to post messages on chat. */
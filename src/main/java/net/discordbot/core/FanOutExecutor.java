@@ -0,0 +1,92 @@
+package net.discordbot.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Bounded pool that fans reaction and voice events out to the bots, so listener code never runs on
+ * the JVM-wide common ForkJoinPool. Tasks that do not fit in the queue are dropped and counted.
+ */
+final class FanOutExecutor {
+
+  private static final int QUEUE_CAPACITY = 1024;
+
+  private final ThreadPoolExecutor executor;
+
+  private final AtomicLong submitted = new AtomicLong();
+
+  private final AtomicLong rejected = new AtomicLong();
+
+  /** Reports the exceptions thrown by tasks. */
+  private final BiConsumer<String, Throwable> errorLog;
+
+  FanOutExecutor(int threads, BiConsumer<String, Throwable> errorLog) {
+    this.errorLog = errorLog;
+    executor = new ThreadPoolExecutor(
+        threads,
+        threads,
+        0,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+        new ThreadFactoryBuilder().setNameFormat("fan-out-%d").setDaemon(true).build(),
+        new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /** Runs `task` in the background. Returns false if the task was dropped. */
+  boolean execute(Runnable task) {
+    try {
+      executor.execute(() -> runSafely(task));
+    } catch (RejectedExecutionException e) {
+      rejected.incrementAndGet();
+      return false;
+    }
+    submitted.incrementAndGet();
+    return true;
+  }
+
+  /** Runs all `tasks` in parallel and waits for them to finish, rethrowing the first failure. */
+  void runAll(List<Runnable> tasks) {
+    List<Callable<Object>> callables = new ArrayList<>();
+    tasks.forEach(task -> callables.add(Executors.callable(task)));
+    try {
+      for (Future<Object> result : executor.invokeAll(callables)) {
+        result.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Background task failed", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for background tasks", e);
+    }
+  }
+
+  private void runSafely(Runnable task) {
+    try {
+      task.run();
+    } catch (RuntimeException e) {
+      errorLog.accept("Failed to process an event", e);
+    }
+  }
+
+  String getStatistics() {
+    return String.format(
+        "fan-out: %d active, %d queued, %d completed of %d submitted, %d rejected",
+        executor.getActiveCount(),
+        executor.getQueue().size(),
+        executor.getCompletedTaskCount(),
+        submitted.get(),
+        rejected.get());
+  }
+}
@@ -0,0 +1,96 @@
+package net.discordbot.core;
+
+import com.google.common.collect.Lists;
+import net.dv8tion.jda.core.entities.ChannelType;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.TextChannel;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes messages in batches. Messages of a guild text channel are collected for a short while and
+ * removed with the bulk delete endpoint, falling back to single deletes for messages that are too
+ * old for it and for other kinds of channels.
+ */
+final class MessageDeleter {
+
+  private static final long FLUSH_DELAY_MILLISECONDS = 1000;
+
+  /** The most messages Discord accepts in a single bulk delete. */
+  private static final int MAX_BULK_SIZE = 100;
+
+  /** Discord refuses to bulk delete messages older than two weeks. Keep a margin of an hour. */
+  private static final long MAX_BULK_AGE_HOURS = 14 * 24 - 1;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final ConcurrentHashMap<Long, List<Message>> pending = new ConcurrentHashMap<>();
+
+  private final AtomicLong deleted = new AtomicLong();
+
+  private final AtomicLong requests = new AtomicLong();
+
+  MessageDeleter(ScheduledExecutorService scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  void delete(Message message) {
+    if (!message.isFromType(ChannelType.TEXT)) {
+      deleteSingle(message);
+      return;
+    }
+    TextChannel channel = message.getTextChannel();
+    pending.compute(channel.getIdLong(), (id, messages) -> {
+      if (messages == null) {
+        // First message of a new batch.
+        messages = new ArrayList<>();
+        scheduler.schedule(() -> flush(channel), FLUSH_DELAY_MILLISECONDS, TimeUnit.MILLISECONDS);
+      }
+      messages.add(message);
+      return messages;
+    });
+  }
+
+  private void flush(TextChannel channel) {
+    List<Message> messages = pending.remove(channel.getIdLong());
+    if (messages == null) {
+      return;
+    }
+    OffsetDateTime oldestBulk = OffsetDateTime.now().minusHours(MAX_BULK_AGE_HOURS);
+    List<Message> bulk = new ArrayList<>();
+    for (Message message : messages) {
+      if (message.getCreationTime().isAfter(oldestBulk)) {
+        bulk.add(message);
+      } else {
+        deleteSingle(message);
+      }
+    }
+    for (List<Message> chunk : Lists.partition(bulk, MAX_BULK_SIZE)) {
+      if (chunk.size() == 1) {
+        deleteSingle(chunk.get(0));
+      } else {
+        requests.incrementAndGet();
+        deleted.addAndGet(chunk.size());
+        channel.deleteMessages(new ArrayList<>(chunk)).queue();
+      }
+    }
+  }
+
+  private void deleteSingle(Message message) {
+    requests.incrementAndGet();
+    deleted.incrementAndGet();
+    message.delete().queue();
+  }
+
+  String getStatistics() {
+    return String.format(
+        "deletions: %d messages in %d requests, %d channels pending",
+        deleted.get(), requests.get(), pending.size());
+  }
+}
@@ -0,0 +1,132 @@
+package net.discordbot.core;
+
+import com.google.common.base.Verify;
+import com.google.common.collect.ImmutableMap;
+import net.discordbot.common.MessageInterest;
+import net.discordbot.common.ParsedMessage;
+import net.discordbot.common.TextListener;
+import net.discordbot.util.KeywordMatcher;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Combines the MessageInterest of all TextListeners into a single index that picks the listeners
+ * a message is relevant to. Candidates are returned as a bit mask over the listeners, in the order
+ * in which they were added.
+ */
+final class MessageRouter {
+
+  private final List<TextListener> listeners = new ArrayList<>();
+
+  private volatile Index index = new Index(new MessageInterest[0]);
+
+  void addListener(TextListener listener) {
+    Verify.verify(listeners.size() < Long.SIZE, "Too many TextListeners!");
+    listeners.add(listener);
+    rebuild();
+  }
+
+  /** Returns a bit mask of the listeners which could be interested in `message`. */
+  long route(ParsedMessage message) {
+    Index current = index;
+    if (current.isStale()) {
+      current = rebuild();
+    }
+    return current.route(message);
+  }
+
+  private synchronized Index rebuild() {
+    if (!index.isStale()) {
+      // Another thread already picked up the latest interests.
+      return index;
+    }
+    MessageInterest[] interests = new MessageInterest[listeners.size()];
+    for (int i = 0; i < interests.length; i++) {
+      interests[i] = Verify.verifyNotNull(listeners.get(i).getInterest());
+    }
+    index = new Index(interests);
+    return index;
+  }
+
+  /** Immutable snapshot of the interests of all listeners. */
+  private final class Index {
+
+    private final MessageInterest[] interests;
+
+    private final ImmutableMap<String, Long> prefixMasks;
+
+    /** The listeners of every keyword of `keywordMatcher`. */
+    private final long[] keywordMasks;
+
+    private final KeywordMatcher keywordMatcher;
+
+    private long everythingMask;
+
+    private long digitMask;
+
+    private long keywordMask;
+
+    private Index(MessageInterest[] interests) {
+      this.interests = interests;
+      Map<String, Long> prefixes = new LinkedHashMap<>();
+      Map<String, Long> keywords = new LinkedHashMap<>();
+      for (int i = 0; i < interests.length; i++) {
+        long bit = 1L << i;
+        MessageInterest interest = interests[i];
+        if (interest.isEverything()) {
+          everythingMask |= bit;
+        }
+        if (interest.isDigits()) {
+          digitMask |= bit;
+        }
+        for (String prefix : interest.getPrefixes()) {
+          prefixes.merge(prefix, bit, (a, b) -> a | b);
+        }
+        for (String keyword : interest.getKeywords()) {
+          keywords.merge(keyword, bit, (a, b) -> a | b);
+          keywordMask |= bit;
+        }
+      }
+      prefixMasks = ImmutableMap.copyOf(prefixes);
+      keywordMasks = keywords.values().stream().mapToLong(Long::longValue).toArray();
+      keywordMatcher = new KeywordMatcher(new ArrayList<>(keywords.keySet()));
+    }
+
+    private boolean isStale() {
+      if (interests.length != listeners.size()) {
+        return true;
+      }
+      for (int i = 0; i < interests.length; i++) {
+        if (interests[i] != listeners.get(i).getInterest()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private long route(ParsedMessage message) {
+      long candidates = everythingMask;
+      for (Map.Entry<String, Long> prefix : prefixMasks.entrySet()) {
+        if (message.getContent().startsWith(prefix.getKey())) {
+          candidates |= prefix.getValue();
+        }
+      }
+      if ((digitMask & ~candidates) != 0 && message.hasDigit()) {
+        candidates |= digitMask;
+      }
+      if ((keywordMask & ~candidates) != 0) {
+        long[] matched = {candidates};
+        // Stop as soon as every listener with keywords is a candidate.
+        keywordMatcher.forEachMatch(message.getContent(), (keyword, start, end) -> {
+          matched[0] |= keywordMasks[keyword];
+          return (keywordMask & ~matched[0]) != 0;
+        });
+        candidates = matched[0];
+      }
+      return candidates;
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package net.discordbot.core;
+
+import net.discordbot.util.IdSlots;
+
+/**
+ * Remembers the content hash of recently processed messages and the index of the TextListener that
+ * handled them. The cache is a fixed-size direct-mapped table of primitives, so an entry costs 16
+ * bytes and colliding messages simply evict each other.
+ */
+final class ProcessedMessages {
+
+  /** Returned by `get` for messages that are not in the cache. No entry has a lower half of 0. */
+  static final long MISSING = 0;
+
+  /** Handler index of messages that no listener handled. */
+  static final int NO_HANDLER = -1;
+
+  private final IdSlots slots;
+
+  private final long[] ids;
+
+  /** The content hash in the upper half and the handler index plus 2 in the lower half. */
+  private final long[] entries;
+
+  ProcessedMessages(int capacity) {
+    slots = new IdSlots(capacity);
+    ids = new long[capacity];
+    entries = new long[capacity];
+  }
+
+  /** Returns the entry of the message with the given ID or `MISSING`. */
+  synchronized long get(long id) {
+    int slot = slots.slot(id);
+    return ids[slot] == id ? entries[slot] : MISSING;
+  }
+
+  synchronized void put(long id, int contentHash, int handler) {
+    int slot = slots.slot(id);
+    ids[slot] = id;
+    entries[slot] = ((long) contentHash << 32) | ((handler + 2) & 0xFFFFFFFFL);
+  }
+
+  static int getContentHash(long entry) {
+    return (int) (entry >>> 32);
+  }
+
+  static int getHandler(long entry) {
+    return (int) entry - 2;
+  }
+}
@@ -0,0 +1,65 @@
+package net.discordbot.core;
+
+import net.dv8tion.jda.core.entities.MessageReaction;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Folds reactions with the same emote on the same message into one net delta while they wait to be
+ * processed. Under reaction storms, a burst of adds and removes reaches the listeners as a single
+ * update, or not at all if it cancels out.
+ */
+final class ReactionCoalescer {
+
+  private final FanOutExecutor executor;
+
+  private final ObjIntConsumer<MessageReaction> listener;
+
+  private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+
+  private final AtomicLong coalesced = new AtomicLong();
+
+  ReactionCoalescer(FanOutExecutor executor, ObjIntConsumer<MessageReaction> listener) {
+    this.executor = executor;
+    this.listener = listener;
+  }
+
+  void add(MessageReaction reaction, int factor) {
+    String key = String.format("%d:%s", reaction.getMessageIdLong(), reaction.getEmote().getName());
+    pending.compute(key, (unused, update) -> {
+      if (update != null) {
+        coalesced.incrementAndGet();
+        update.delta += factor;
+        return update;
+      }
+      update = new Pending(reaction, factor);
+      // Drop the reaction if it cannot be processed.
+      return executor.execute(() -> process(key)) ? update : null;
+    });
+  }
+
+  private void process(String key) {
+    Pending update = pending.remove(key);
+    if (update != null && update.delta != 0) {
+      listener.accept(update.reaction, update.delta);
+    }
+  }
+
+  String getStatistics() {
+    return String.format("reactions: %d coalesced, %d pending", coalesced.get(), pending.size());
+  }
+
+  private static final class Pending {
+
+    private final MessageReaction reaction;
+
+    private int delta;
+
+    private Pending(MessageReaction reaction, int delta) {
+      this.reaction = reaction;
+      this.delta = delta;
+    }
+  }
+}
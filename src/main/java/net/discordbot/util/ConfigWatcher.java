@@ -0,0 +1,102 @@
+package net.discordbot.util;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Holds the current Config and replaces it whenever the config file changes. A changed file is
+ * parsed into a new Config, which is published atomically and handed to the listeners. A file that
+ * does not parse or validate is reported and ignored, so the previous Config stays in effect.
+ */
+public final class ConfigWatcher {
+
+  /** How long to wait for further changes, since editors often write a file in several steps. */
+  private static final long QUIET_PERIOD_MS = 250;
+
+  private final Path path;
+
+  private volatile Config config;
+
+  private final List<Consumer<Config>> listeners = new CopyOnWriteArrayList<>();
+
+  public ConfigWatcher(String configPath) {
+    this.path = Paths.get(configPath).toAbsolutePath().normalize();
+    this.config = Config.create(path.toString());
+  }
+
+  public Config get() {
+    return config;
+  }
+
+  /** Calls `listener` with every Config that replaces the current one. */
+  public void addListener(Consumer<Config> listener) {
+    listeners.add(listener);
+  }
+
+  /** Starts watching the config file in the background, reporting failed reloads to `errorLog`. */
+  public void start(BiConsumer<String, Throwable> errorLog) throws IOException {
+    WatchService watchService = path.getFileSystem().newWatchService();
+    // Files cannot be watched directly, and editors often replace them instead of writing them.
+    path.getParent().register(
+        watchService,
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY);
+    Thread thread = new Thread(() -> watch(watchService, errorLog), "config-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void watch(WatchService watchService, BiConsumer<String, Throwable> errorLog) {
+    try {
+      while (true) {
+        boolean changed = false;
+        WatchKey key = watchService.take();
+        do {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                || path.getFileName().equals(event.context());
+          }
+          key.reset();
+          key = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+        } while (key != null);
+        if (changed) {
+          reload(errorLog);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Stop watching.
+    }
+  }
+
+  private void reload(BiConsumer<String, Throwable> errorLog) {
+    Config updated;
+    try {
+      updated = Config.create(path.toString());
+    } catch (RuntimeException e) {
+      errorLog.accept("Ignoring invalid config file " + path, e);
+      return;
+    }
+    if (updated.equals(config)) {
+      return;
+    }
+    config = updated;
+    for (Consumer<Config> listener : listeners) {
+      try {
+        listener.accept(updated);
+      } catch (RuntimeException e) {
+        errorLog.accept("Could not apply the config", e);
+      }
+    }
+  }
+}
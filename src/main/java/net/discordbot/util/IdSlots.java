@@ -0,0 +1,28 @@
+package net.discordbot.util;
+
+import com.google.common.base.Verify;
+
+/**
+ * Maps Discord IDs to the slots of a table of primitives whose size is a power of 2. The low bits
+ * of an ID barely change between messages, so IDs are spread with a multiplicative hash first.
+ */
+public final class IdSlots {
+
+  private final int mask;
+
+  public IdSlots(int capacity) {
+    Verify.verify(Integer.bitCount(capacity) == 1, "Capacity %s is not a power of 2", capacity);
+    mask = capacity - 1;
+  }
+
+  /** Returns the home slot of `id`. */
+  public int slot(long id) {
+    long hash = id * 0x9E3779B97F4A7C15L;
+    return (int) (hash >>> 32) & mask;
+  }
+
+  /** Returns the slot `offset` slots after `slot`, wrapping around at the end of the table. */
+  public int offset(int slot, int offset) {
+    return (slot + offset) & mask;
+  }
+}
@@ -0,0 +1,200 @@
+package net.discordbot.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton that finds whole-word occurrences of a fixed set of keywords in a text,
+ * ignoring case. The automaton is stored in flat primitive arrays and matches are reported through
+ * a callback, so scanning a message builds no collections and can stop at the first useful match.
+ */
+public final class KeywordMatcher {
+
+  /** Returned by `findRandom` for texts that contain no keyword. */
+  public static final int NO_MATCH = -1;
+
+  private static final int ROOT = 0;
+
+  /** Receives the keywords found in a text. */
+  public interface MatchVisitor {
+
+    /** Handles `keyword` at [start, end) of the text. Returns false to stop the scan. */
+    boolean visit(int keyword, int start, int end);
+  }
+
+  /** The edges of state `s` are at [edgeStart[s], edgeStart[s + 1]), sorted by character. */
+  private final int[] edgeStart;
+
+  private final char[] edgeChars;
+
+  private final int[] edgeTargets;
+
+  /** The state of the longest proper suffix of every state. */
+  private final int[] fail;
+
+  /** The keyword that ends at every state, or NO_MATCH. */
+  private final int[] keywordAt;
+
+  /** The closest state along the fail links that ends a keyword, or NO_MATCH. */
+  private final int[] nextOutput;
+
+  private final int[] keywordLengths;
+
+  /** Builds a matcher whose keyword IDs are the positions of the keywords in `keywords`. */
+  public KeywordMatcher(List<String> keywords) {
+    List<TreeMap<Character, Integer>> children = new ArrayList<>();
+    List<Integer> keywordStates = new ArrayList<>();
+    children.add(new TreeMap<>());
+    keywordLengths = new int[keywords.size()];
+    for (int keyword = 0; keyword < keywords.size(); keyword++) {
+      String text = keywords.get(keyword);
+      keywordLengths[keyword] = text.length();
+      int state = ROOT;
+      for (int i = 0; i < text.length(); i++) {
+        char c = Character.toLowerCase(text.charAt(i));
+        Integer next = children.get(state).get(c);
+        if (next == null) {
+          next = children.size();
+          children.add(new TreeMap<>());
+          children.get(state).put(c, next);
+        }
+        state = next;
+      }
+      keywordStates.add(state);
+    }
+
+    int states = children.size();
+    edgeStart = new int[states + 1];
+    edgeChars = new char[states - 1];
+    edgeTargets = new int[states - 1];
+    int edge = 0;
+    for (int state = 0; state < states; state++) {
+      edgeStart[state] = edge;
+      for (Map.Entry<Character, Integer> child : children.get(state).entrySet()) {
+        edgeChars[edge] = child.getKey();
+        edgeTargets[edge++] = child.getValue();
+      }
+    }
+    edgeStart[states] = edge;
+
+    keywordAt = new int[states];
+    Arrays.fill(keywordAt, NO_MATCH);
+    for (int keyword = keywordStates.size() - 1; keyword >= 0; keyword--) {
+      if (keywordLengths[keyword] > 0) {
+        // Duplicate keywords are reported with their first ID.
+        keywordAt[keywordStates.get(keyword)] = keyword;
+      }
+    }
+
+    // Fail links point to shallower states, so a breadth-first walk sees them first.
+    fail = new int[states];
+    nextOutput = new int[states];
+    nextOutput[ROOT] = NO_MATCH;
+    Queue<Integer> queue = new ArrayDeque<>();
+    for (int e = edgeStart[ROOT]; e < edgeStart[ROOT + 1]; e++) {
+      fail[edgeTargets[e]] = ROOT;
+      nextOutput[edgeTargets[e]] = NO_MATCH;
+      queue.add(edgeTargets[e]);
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.remove();
+      for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+        int child = edgeTargets[e];
+        int target = next(fail[state], edgeChars[e]);
+        fail[child] = target;
+        nextOutput[child] = keywordAt[target] != NO_MATCH ? target : nextOutput[target];
+        queue.add(child);
+      }
+    }
+  }
+
+  /** Reports every whole-word keyword in `text` in the order in which the keywords end. */
+  public void forEachMatch(CharSequence text, MatchVisitor visitor) {
+    int state = ROOT;
+    for (int i = 0; i < text.length(); i++) {
+      state = next(state, Character.toLowerCase(text.charAt(i)));
+      int output = keywordAt[state] != NO_MATCH ? state : nextOutput[state];
+      for (; output != NO_MATCH; output = nextOutput[output]) {
+        int keyword = keywordAt[output];
+        int start = i + 1 - keywordLengths[keyword];
+        if (isWholeWord(text, start, i + 1) && !visitor.visit(keyword, start, i + 1)) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the keyword that spans all of `text`, or else a keyword picked uniformly among all
+   * whole-word occurrences in it, or NO_MATCH if there are none.
+   */
+  public int findRandom(CharSequence text, Random random) {
+    Reservoir reservoir = new Reservoir(text.length(), random);
+    forEachMatch(text, reservoir);
+    return reservoir.exact != NO_MATCH ? reservoir.exact : reservoir.picked;
+  }
+
+  private int next(int state, char c) {
+    while (true) {
+      int low = edgeStart[state];
+      int high = edgeStart[state + 1] - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        char edge = edgeChars[middle];
+        if (edge < c) {
+          low = middle + 1;
+        } else if (edge > c) {
+          high = middle - 1;
+        } else {
+          return edgeTargets[middle];
+        }
+      }
+      if (state == ROOT) {
+        return ROOT;
+      }
+      state = fail[state];
+    }
+  }
+
+  private static boolean isWholeWord(CharSequence text, int start, int end) {
+    return (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+        && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)));
+  }
+
+  /** Keeps one uniformly random match out of all matches seen so far. */
+  private static final class Reservoir implements MatchVisitor {
+
+    private final int length;
+
+    private final Random random;
+
+    private int seen;
+
+    private int picked = NO_MATCH;
+
+    private int exact = NO_MATCH;
+
+    private Reservoir(int length, Random random) {
+      this.length = length;
+      this.random = random;
+    }
+
+    @Override
+    public boolean visit(int keyword, int start, int end) {
+      if (start == 0 && end == length) {
+        exact = keyword;
+        return false;
+      }
+      if (random.nextInt(++seen) == 0) {
+        picked = keyword;
+      }
+      return true;
+    }
+  }
+}
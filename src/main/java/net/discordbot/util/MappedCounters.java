@@ -0,0 +1,128 @@
+package net.discordbot.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Array of integer counters that lives in a memory-mapped file. Counters are updated atomically in
+ * place, so the operating system writes them back on its own and persisting them is a matter of
+ * forcing the mapping to disk. The file starts with a versioned header and grows as higher IDs are
+ * used.
+ */
+public final class MappedCounters {
+
+  private static final long FORCE_INTERVAL_SECONDS = 120;
+
+  private static final int MAGIC = 0x4D434E54;
+
+  private static final int VERSION = 1;
+
+  /** The magic number, the version and two reserved ints. */
+  private static final int HEADER_BYTES = 16;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private static final VarHandle COUNTER =
+      MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private final File file;
+
+  private final FileChannel channel;
+
+  /** Replaced when the file grows. Both mappings share the same pages, so no update is lost. */
+  private volatile MappedByteBuffer buffer;
+
+  private final PersistenceService.Registration flushes;
+
+  public MappedCounters(File file) {
+    this.file = file;
+    try {
+      channel = FileChannel.open(
+          file.toPath(),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      if (channel.size() == 0) {
+        buffer = map(INITIAL_CAPACITY);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.force();
+      } else {
+        buffer = map((int) ((channel.size() - HEADER_BYTES) / Integer.BYTES));
+        if (buffer.getInt(0) != MAGIC) {
+          throw new IOException(file + " does not hold counters");
+        }
+        if (buffer.getInt(4) != VERSION) {
+          throw new IOException("Unsupported counter version " + buffer.getInt(4) + " in " + file);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Encountered exception while loading " + file, e);
+    }
+    flushes = PersistenceService.get().register(
+        file.getName(), this::force, FORCE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  private MappedByteBuffer map(int capacity) throws IOException {
+    MappedByteBuffer mapped = channel.map(
+        FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * Integer.BYTES);
+    mapped.order(ByteOrder.LITTLE_ENDIAN);
+    return mapped;
+  }
+
+  public int get(int id) {
+    MappedByteBuffer current = buffer;
+    int offset = offset(id);
+    if (offset + Integer.BYTES > current.capacity()) {
+      return 0;
+    }
+    return (int) COUNTER.getVolatile(current, offset);
+  }
+
+  public void add(int id, int delta) {
+    int offset = offset(id);
+    MappedByteBuffer current = buffer;
+    if (offset + Integer.BYTES > current.capacity()) {
+      current = grow(id);
+    }
+    COUNTER.getAndAdd(current, offset, delta);
+  }
+
+  private synchronized MappedByteBuffer grow(int id) {
+    int capacity = (buffer.capacity() - HEADER_BYTES) / Integer.BYTES;
+    while (capacity <= id) {
+      capacity *= 2;
+    }
+    if (offset(id) + Integer.BYTES > buffer.capacity()) {
+      try {
+        buffer = map(capacity);
+      } catch (IOException e) {
+        throw new IllegalStateException("Encountered exception while growing " + file, e);
+      }
+    }
+    return buffer;
+  }
+
+  /** Writes all counters to disk. */
+  public void force() {
+    buffer.force();
+  }
+
+  /** Forces the counters to disk and releases the file. */
+  public void close() throws IOException {
+    flushes.cancel();
+    force();
+    channel.close();
+  }
+
+  private static int offset(int id) {
+    return HEADER_BYTES + id * Integer.BYTES;
+  }
+}
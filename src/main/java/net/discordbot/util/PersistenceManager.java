@@ -1,72 +1,145 @@
 package net.discordbot.util;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+/**
+ * Keeps a thread-safe object in memory and periodically stores it to disk with Java serialization.
+ * Reads never lock. Changes go through `update`, which marks the object dirty, so a store only
+ * writes if something changed since the last one. A store serializes the object to memory while
+ * updates are held back, so the file always holds a consistent state, and then writes it to a
+ * temporary file that atomically replaces the old one.
+ */
 public final class PersistenceManager<T extends Serializable> {
 
   private static final long STORE_COOLDOWN_MILLISECONDS = 120000;
 
-  private T object;
+  /** All managers, for statistics. */
+  private static final List<PersistenceManager<?>> MANAGERS = new CopyOnWriteArrayList<>();
+
+  private volatile T object;
 
   private final File file;
 
+  /** Updates share the read lock, stores take the write lock while they take their snapshot. */
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** Bumped by every update. */
+  private final AtomicLong version = new AtomicLong();
+
+  /** The version that is on disk. Guarded by `this`. */
+  private long storedVersion;
+
+  private final AtomicLong stores = new AtomicLong();
+
+  private final AtomicLong storeNanos = new AtomicLong();
+
+  private final AtomicLong updateStallNanos = new AtomicLong();
+
   public PersistenceManager(File file, T defaultInstance) {
     this.file = file;
     if (!file.exists()) {
-      store(defaultInstance);
+      write(serialize(defaultInstance));
     }
     load();
-    new PeriodicStoreTask(STORE_COOLDOWN_MILLISECONDS).start();
+    MANAGERS.add(this);
+    PersistenceService.get().register(
+        file.getName(), this::store, STORE_COOLDOWN_MILLISECONDS, TimeUnit.MILLISECONDS);
   }
 
-  public synchronized void load() {
-    try {
-      ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+  public void load() {
+    lock.writeLock().lock();
+    try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
       object = (T) in.readObject();
-      in.close();
     } catch (IOException | ClassNotFoundException e) {
       throw new IllegalStateException("Encountered exception while loading", e);
+    } finally {
+      lock.writeLock().unlock();
     }
   }
 
-  public void store() {
-    store(object);
+  /** Writes the object to disk if it changed since the last store. */
+  public synchronized void store() {
+    long start = System.nanoTime();
+    byte[] data;
+    long snapshotVersion;
+    lock.writeLock().lock();
+    try {
+      snapshotVersion = version.get();
+      if (snapshotVersion == storedVersion) {
+        return;
+      }
+      data = serialize(object);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    write(data);
+    storedVersion = snapshotVersion;
+    stores.incrementAndGet();
+    storeNanos.addAndGet(System.nanoTime() - start);
   }
 
-  private synchronized void store(T object) {
-    try {
-      ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+  private static byte[] serialize(Object object) {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(data)) {
       out.writeObject(object);
-      out.close();
     } catch (IOException e) {
       throw new IllegalStateException("Encountered exception while storing", e);
     }
+    return data.toByteArray();
   }
 
-  /** Wrapper around the object that is meant to prevent reads during load / store. */
-  public synchronized T get() {
-    return object;
+  private void write(byte[] data) {
+    File temp = new File(file.getPath() + ".tmp");
+    try {
+      Files.write(temp.toPath(), data);
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new IllegalStateException("Encountered exception while storing", e);
+    }
   }
 
-  /** Periodically updates */
-  private final class PeriodicStoreTask extends Thread {
-
-    private final long timeoutMilis;
+  /** Returns the object. Callers must not change it other than through `update`. */
+  public T get() {
+    return object;
+  }
 
-    private PeriodicStoreTask(long timeout) {
-      this.timeoutMilis = timeout;
+  /** Applies `change` to the object and schedules it to be stored. */
+  public void update(Consumer<? super T> change) {
+    long start = System.nanoTime();
+    lock.readLock().lock();
+    updateStallNanos.addAndGet(System.nanoTime() - start);
+    try {
+      change.accept(object);
+      version.incrementAndGet();
+    } finally {
+      lock.readLock().unlock();
     }
+  }
 
-    @Override
-    public void run() {
-      while(true) {
-        store();
-        try {
-          sleep(timeoutMilis);
-        } catch (InterruptedException e) {
-          // This is loose requirement. Silently fail.
-        }
-      }
-    }
+  private String getStatistics() {
+    long count = stores.get();
+    return String.format(
+        "%s %d stores averaging %dms, updates stalled %dms",
+        file.getName(),
+        count,
+        count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(storeNanos.get() / count),
+        TimeUnit.NANOSECONDS.toMillis(updateStallNanos.get()));
+  }
+
+  /** Returns a summary of the stores of all managers. */
+  public static String getAllStatistics() {
+    return "persistence: " + MANAGERS.stream()
+        .map(PersistenceManager::getStatistics)
+        .collect(Collectors.joining("; "));
   }
 }
@@ -0,0 +1,130 @@
+package net.discordbot.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Owns the thread that writes the state of all stores to disk. Every store is flushed at its own
+ * interval, and the first flushes are spread over the interval so stores registered together do
+ * not hit the disk at the same time. All stores are flushed once more when the JVM shuts down, for
+ * as long as the shutdown deadline allows.
+ */
+public final class PersistenceService {
+
+  private static final long SHUTDOWN_DEADLINE_MILLISECONDS = 10000;
+
+  /** Spreads the first flushes of consecutive registrations evenly over their interval. */
+  private static final double GOLDEN_RATIO_FRACTION = 0.6180339887;
+
+  private static final PersistenceService INSTANCE = new PersistenceService();
+
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("persistence").setDaemon(true).build());
+
+  private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+  private int registered;
+
+  /** Reports failed flushes. Writes to stderr until the log channel is set up. */
+  private volatile BiConsumer<String, Throwable> errorLog =
+      (context, error) -> System.err.println(context + ": " + error);
+
+  private PersistenceService() {
+    Runtime.getRuntime().addShutdownHook(new Thread(this::flushAll, "persistence-shutdown"));
+  }
+
+  public static PersistenceService get() {
+    return INSTANCE;
+  }
+
+  /** Reports failed flushes to `errorLog` from now on. */
+  public void setErrorLog(BiConsumer<String, Throwable> errorLog) {
+    this.errorLog = errorLog;
+  }
+
+  /** Flushes `store` every `interval` until the registration is cancelled. */
+  public synchronized Registration register(
+      String name, Flushable store, long interval, TimeUnit unit) {
+    Registration registration = new Registration(name, store);
+    long period = unit.toMillis(interval);
+    long initialDelay = (long) (period * ((++registered * GOLDEN_RATIO_FRACTION) % 1));
+    registration.schedule =
+        executor.scheduleWithFixedDelay(
+            registration::flush, initialDelay, period, TimeUnit.MILLISECONDS);
+    registrations.add(registration);
+    return registration;
+  }
+
+  /** Flushes all stores on a separate thread, waiting no longer than the shutdown deadline. */
+  private void flushAll() {
+    Thread flusher =
+        new Thread(() -> registrations.forEach(Registration::flush), "persistence-flush");
+    flusher.start();
+    try {
+      flusher.join(SHUTDOWN_DEADLINE_MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (flusher.isAlive()) {
+      System.err.println("Gave up flushing stores after the shutdown deadline");
+    }
+  }
+
+  public String getStatistics() {
+    return "flushes: " + registrations.stream()
+        .map(Registration::getStatistics)
+        .collect(Collectors.joining(", "));
+  }
+
+  /** A store that is flushed periodically. */
+  public final class Registration {
+
+    private final String name;
+
+    private final Flushable store;
+
+    private ScheduledFuture<?> schedule;
+
+    private volatile long lastFlush = System.nanoTime();
+
+    private volatile int failures;
+
+    private Registration(String name, Flushable store) {
+      this.name = name;
+      this.store = store;
+    }
+
+    private synchronized void flush() {
+      try {
+        store.flush();
+        lastFlush = System.nanoTime();
+      } catch (IOException | RuntimeException e) {
+        // The next flush will try again.
+        failures++;
+        errorLog.accept("Could not flush " + name, e);
+      }
+    }
+
+    private String getStatistics() {
+      long age = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - lastFlush);
+      return String.format("%s %ds ago (%d failed)", name, age, failures);
+    }
+
+    /** Stops flushing the store. Does not flush it one last time. */
+    public void cancel() {
+      schedule.cancel(false);
+      registrations.remove(this);
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package net.discordbot.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Holds the single timer thread that drives the background work of the bots. Tasks scheduled on it
+ * must be short and must never block.
+ */
+public final class SharedScheduler {
+
+  private static final ScheduledExecutorService SCHEDULER =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("shared-scheduler").setDaemon(true).build());
+
+  private SharedScheduler() {}
+
+  public static ScheduledExecutorService get() {
+    return SCHEDULER;
+  }
+}
@@ -0,0 +1,87 @@
+package net.discordbot.bots;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that rolling an alias table over the capped chances of memes posts them exactly as often
+ * as the legacy ReactBot did, which picked a meme uniformly and then rolled for its chance.
+ */
+public final class AliasTableTest {
+
+  private static final int ROLLS = 400000;
+
+  /** The largest difference in frequency that is tolerated, about five standard deviations. */
+  private static final double TOLERANCE = 0.004;
+
+  @Test
+  public void sampleIsProportionalToTheWeights() {
+    AliasTable table = new AliasTable(new double[] {1, 2, 0, 5});
+    Random random = new Random(42);
+    int[] counts = new int[4];
+    for (int i = 0; i < ROLLS; i++) {
+      counts[table.sample(random)]++;
+    }
+
+    assertEquals(1 / 8.0, (double) counts[0] / ROLLS, TOLERANCE);
+    assertEquals(2 / 8.0, (double) counts[1] / ROLLS, TOLERANCE);
+    assertEquals(0, counts[2]);
+    assertEquals(5 / 8.0, (double) counts[3] / ROLLS, TOLERANCE);
+  }
+
+  @Test
+  public void rollsLikeTheLegacyAlgorithm() {
+    assertRollsLikeTheLegacyAlgorithm(0.9);
+    assertRollsLikeTheLegacyAlgorithm(0.01, 0.01);
+    assertRollsLikeTheLegacyAlgorithm(2.0, 0.01);
+    assertRollsLikeTheLegacyAlgorithm(0.9, 1.5, 0.3, 7.0);
+    assertRollsLikeTheLegacyAlgorithm(0.01, 0.5, 0.9, 0.9, 0.2);
+  }
+
+  @Test
+  public void rollsHalfOfTheTimeForAHeavyAndALightMeme() {
+    double[] frequencies = rollCappedChances(new double[] {2.0, 0.01}, new Random(42));
+
+    assertEquals(0.5, frequencies[0], TOLERANCE);
+    assertEquals(0.005, frequencies[1], TOLERANCE);
+  }
+
+  /** Compares the frequency of every meme and of posting nothing with the legacy algorithm. */
+  private static void assertRollsLikeTheLegacyAlgorithm(double... chances) {
+    double[] expected = rollLegacy(chances, new Random(1));
+    double[] actual = rollCappedChances(chances, new Random(2));
+    for (int i = 0; i <= chances.length; i++) {
+      String outcome = i == chances.length ? "no meme" : "meme " + i;
+      assertEquals(outcome, expected[i], actual[i], TOLERANCE);
+    }
+  }
+
+  /** Returns how often each meme, and last nothing, was posted by rolling an alias table. */
+  private static double[] rollCappedChances(double[] chances, Random random) {
+    double[] capped = new double[chances.length];
+    for (int i = 0; i < chances.length; i++) {
+      capped[i] = Math.min(1, chances[i]);
+    }
+    AliasTable table = new AliasTable(capped);
+    double[] frequencies = new double[chances.length + 1];
+    for (int i = 0; i < ROLLS; i++) {
+      int pick = table.roll(random);
+      frequencies[pick == AliasTable.NONE ? chances.length : pick] += 1.0 / ROLLS;
+    }
+    return frequencies;
+  }
+
+  /** Returns how often each meme, and last nothing, was posted by the legacy ReactBot. */
+  private static double[] rollLegacy(double[] chances, Random random) {
+    double[] frequencies = new double[chances.length + 1];
+    for (int i = 0; i < ROLLS; i++) {
+      int pick = random.nextInt(chances.length);
+      boolean posted = random.nextDouble() <= chances[pick];
+      frequencies[posted ? pick : chances.length] += 1.0 / ROLLS;
+    }
+    return frequencies;
+  }
+}
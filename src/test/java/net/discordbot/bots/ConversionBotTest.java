@@ -0,0 +1,210 @@
+package net.discordbot.bots;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import net.discordbot.common.ParsedMessage;
+import org.jscience.physics.amount.Amount;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.measure.unit.Unit;
+
+import static javax.measure.unit.NonSI.*;
+import static javax.measure.unit.SI.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that ConversionBot replies exactly like the `Amount.valueOf` implementation it replaced,
+ * which answered every quantity of a message and is reduced to its distinct replies here.
+ */
+public final class ConversionBotTest {
+
+  private static final Pattern LEGACY_IS_UNIT = Pattern.compile(
+      "\\s(-?[0-9]*[.,]?[0-9]+)\\s*([a-zA-Z]*[.a-zA-Z]?[a-zA-Z]+)\\s");
+
+  private static final String CONVERSION_FORMAT = "FYI %s is %.2f%s in non-retarded units";
+
+  private static final List<String> NUMBERS = ImmutableList.of(
+      "1", "5", "0", "-0", "-3", "2.5", "2,5", ".5", "-.5", "5.", "007", "-40", "12", "1000000",
+      "0.001", "9223372036854775807", "12345678901234567890", "1.12345678901234567890");
+
+  private static final List<String> UNITS = ImmutableList.of(
+      "kg", "g", "t", "m", "cm", "mm", "km", "L", "l", "K", "C", "s", "min", "h", "N", "J", "W",
+      "Hz", "lbf", "xyz", "Meter", "in.", "ft.", ".in", ".F", "ftin", "m.m", "km.");
+
+  private static final List<String> MESSAGES = ImmutableList.of(
+      "",
+      "no numbers here",
+      "3 apples",
+      "I am 6 ft tall and weigh 180 lbs",
+      "5 ft 3 in",
+      "5 ft  3 in",
+      ".5 in",
+      "5.F",
+      "5ft 5ft 5ft",
+      "it's 100 F outside",
+      "it's 100F outside, or -40 F at night",
+      "drove 2,5 miles, then 5 km",
+      "drove 30 mi and 30 mi back",
+      "x5 ft",
+      "5 ftx",
+      "5 ft.",
+      "about 5 ft.",
+      "\t5 ft\n",
+      "5\nft",
+      "12 s",
+      "a 1 fl.oz shot",
+      "1.5 gallons and 2 pints",
+      "11 stone",
+      "1 2 3 ft",
+      "--5 ft",
+      "-.5 in",
+      "5 ft, 6 in",
+      "1000000 oz");
+
+  /** Quantities as they are passed to the convert command, which may contain spaces. */
+  private static final List<String> QUANTITIES = ImmutableList.of(
+      "5 ft", "5  ft", "5.5 ft", "5.5  ft", "-0 ft", "+5 ft", "+5.5ft", "1e3ft", "1e3 ft",
+      "2.5e-3 mi", "5Eft", "5e+ft", "5e", "5.e", "1e99999999999ft", "1e400 ft", "-1e400 ft",
+      "5 km/h", "5 km / h", "5 m/s", "5 ft.lb", "5 ft/s", "5 m*", "5 ", "5", "ft", "- ft", "5 xyz",
+      "5\tft", "5.5\t\tft", "5 ft\t", "99999999999999999999 ft");
+
+  @Test
+  public void repliesToEveryAliasLikeAmountValueOf() {
+    for (String alias : ConversionBot.CUSTOM_ALIASES.values()) {
+      for (String number : NUMBERS) {
+        assertSameReplies(number + alias);
+        assertSameReplies(number + " " + alias);
+      }
+    }
+  }
+
+  @Test
+  public void repliesToOtherUnitsLikeAmountValueOf() {
+    for (String unit : UNITS) {
+      for (String number : NUMBERS) {
+        assertSameReplies(number + unit);
+        assertSameReplies(number + " " + unit);
+      }
+    }
+  }
+
+  @Test
+  public void repliesToMessagesLikeAmountValueOf() {
+    for (String message : MESSAGES) {
+      assertSameReplies(message);
+    }
+  }
+
+  @Test
+  public void convertsQuantitiesLikeAmountValueOf() {
+    for (String alias : ConversionBot.CUSTOM_ALIASES.values()) {
+      for (String number : NUMBERS) {
+        String quantity = number + alias;
+        assertEquals(quantity, getLegacyReply(quantity), ConversionBot.getReply(quantity));
+      }
+    }
+  }
+
+  @Test
+  public void convertsCommandQuantitiesLikeAmountValueOf() {
+    for (String quantity : QUANTITIES) {
+      assertEquals(quantity, getLegacyReply(quantity), ConversionBot.getReply(quantity));
+    }
+  }
+
+  @Test
+  public void repliesToRandomMessagesLikeAmountValueOf() {
+    List<String> words = ImmutableList.<String>builder()
+        .addAll(NUMBERS).addAll(UNITS).addAll(ConversionBot.CUSTOM_ALIASES.values()).build();
+    String separators = "  \t\n,.x";
+    Random random = new Random(42);
+    for (int i = 0; i < 20000; i++) {
+      StringBuilder message = new StringBuilder();
+      int length = random.nextInt(6);
+      for (int j = 0; j < length; j++) {
+        message.append(words.get(random.nextInt(words.size())));
+        if (random.nextBoolean()) {
+          message.append(separators.charAt(random.nextInt(separators.length())));
+        }
+      }
+      assertSameReplies(message.toString());
+    }
+  }
+
+  private static void assertSameReplies(String message) {
+    // ConversionBot registers the aliases that the legacy path relies on when it is loaded.
+    Set<String> replies = ConversionBot.findReplies(new ParsedMessage(message));
+    assertEquals(message, getLegacyReplies(message), replies);
+  }
+
+  private static Set<String> getLegacyReplies(String message) {
+    Set<String> replies = new LinkedHashSet<>();
+    Matcher matcher = LEGACY_IS_UNIT.matcher(" " + message + " ");
+    while (matcher.find()) {
+      String reply = getLegacyReply(matcher.group(1) + matcher.group(2));
+      if (reply != null) {
+        replies.add(reply);
+      }
+    }
+    return replies;
+  }
+
+  /** Returns the reply of the implementation before the unit table, or null if there is none. */
+  @SuppressWarnings("unchecked")
+  private static String getLegacyReply(String quantity) {
+    quantity = quantity.replace(',', '.');
+    Amount amount;
+    try {
+      amount = Amount.valueOf(quantity);
+    } catch (Exception e) {
+      return null;
+    }
+    Unit oldUnit = amount.getUnit();
+    Unit unit = oldUnit.getStandardUnit();
+    if (unit.equals(SECOND)) {
+      return null;
+    }
+    Collection<Unit> possibleUnits = getLegacyPreferences(unit);
+    if (unit.equals(oldUnit) || possibleUnits.contains(oldUnit)) {
+      return null;
+    }
+    if (possibleUnits.isEmpty()) {
+      possibleUnits = ImmutableList.of(unit);
+    }
+    double best = Double.POSITIVE_INFINITY;
+    Amount preferred = amount;
+    for (Unit option : possibleUnits) {
+      Amount converted = amount.to(option);
+      double score = Math.abs(1 - Math.log10(1e-20 + Math.abs(converted.getEstimatedValue())));
+      if (score < best) {
+        preferred = converted;
+        best = score;
+      }
+    }
+    return String.format(
+        CONVERSION_FORMAT, quantity, preferred.getEstimatedValue(), preferred.getUnit());
+  }
+
+  private static Collection<Unit> getLegacyPreferences(Unit unit) {
+    if (unit.equals(KILOGRAM)) {
+      return ImmutableList.of(KILOGRAM, GRAM, METRIC_TON, MICRO(GRAM), NANO(GRAM));
+    }
+    if (unit.equals(METER)) {
+      return ImmutableList.of(METER, CENTIMETER, KILOMETER);
+    }
+    if (unit.equals(CUBIC_METRE)) {
+      return ImmutableList.of(LITER, MILLI(LITER));
+    }
+    if (unit.equals(KELVIN)) {
+      return ImmutableList.of(CELSIUS);
+    }
+    return ImmutableSet.of();
+  }
+}
@@ -0,0 +1,67 @@
+package net.discordbot.bots;
+
+import net.discordbot.util.MappedCounters;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class ReactBotTest {
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void migratesTheWeightsOfTheSerializedMap() throws IOException {
+    File persistenceFile = new File(folder.getRoot(), "data");
+    File weightsFile = new File(folder.getRoot(), "data.weights");
+    File absoluteMeme = new File(folder.getRoot(), "memes/b/y.jpg");
+    // The baseline stored a map of the meme files as they were walked, relative to the config.
+    ConcurrentHashMap<File, AtomicInteger> legacy = new ConcurrentHashMap<>();
+    legacy.put(new File("resources/memes/a/x.jpg"), new AtomicInteger(3));
+    legacy.put(new File("resources/memes/./a/z.png"), new AtomicInteger(-2));
+    legacy.put(absoluteMeme, new AtomicInteger(7));
+    try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(persistenceFile))) {
+      out.writeObject(legacy);
+    }
+    MemeRegistry registry = new MemeRegistry(new File(folder.getRoot(), "data.memes"));
+
+    ReactBot.migrateWeights(persistenceFile, weightsFile, registry);
+
+    assertFalse(persistenceFile.exists());
+    assertTrue(new File(persistenceFile.getPath() + ".migrated").isFile());
+    // Memes are walked from a meme folder that may be absolute now.
+    MappedCounters weights = new MappedCounters(weightsFile);
+    assertEquals(3, weights.get(registry.register(new File("resources/memes/a/x.jpg"))));
+    assertEquals(3, weights.get(registry.register(new File("resources/memes/a/x.jpg")
+        .getAbsoluteFile())));
+    assertEquals(-2, weights.get(registry.register(new File("resources/memes/a/z.png")
+        .getAbsoluteFile())));
+    assertEquals(7, weights.get(registry.register(new File(folder.getRoot(), "memes/./b/y.jpg"))));
+    assertEquals(0, weights.get(registry.register(new File(folder.getRoot(), "memes/new.jpg"))));
+    weights.close();
+  }
+
+  @Test
+  public void keepsTheIdsOfARegistryAcrossRestarts() throws IOException {
+    File registryFile = new File(folder.getRoot(), "data.memes");
+    MemeRegistry registry = new MemeRegistry(registryFile);
+    int relative = registry.register(new File("resources/memes/a/x.jpg"));
+    int absolute = registry.register(new File(folder.getRoot(), "memes/y.jpg"));
+
+    MemeRegistry restarted = new MemeRegistry(registryFile);
+
+    File walked = new File("resources/memes/a/x.jpg").getAbsoluteFile();
+    assertEquals(relative, restarted.register(walked));
+    assertEquals(absolute, restarted.register(new File(folder.getRoot(), "memes/../memes/y.jpg")));
+  }
+}
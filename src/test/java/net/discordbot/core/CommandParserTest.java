@@ -0,0 +1,262 @@
+package net.discordbot.core;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that CommandParser behaves exactly like the regex, `split` and JDK parsing it replaced.
+ */
+public final class CommandParserTest {
+
+  private static final Pattern IS_COMMAND = Pattern.compile("(sudo +|!|`|\\\\)([a-zA-Z]+)(.*)");
+
+  private static final List<String> COMMANDS = ImmutableList.of(
+      "",
+      "!",
+      "!help",
+      "!HeLp",
+      "!help ",
+      "!help me",
+      "!1",
+      "!_x",
+      "`roll 2 6",
+      "\\roll",
+      "\\\\roll",
+      "sudo",
+      "sudo ",
+      "sudo roll",
+      "sudo  roll",
+      "sudoroll",
+      "sudo\troll",
+      "sudo 1",
+      " !help",
+      "!help\n",
+      "!help\r\n2",
+      "!help 2\u0085",
+      "!help\u2028",
+      "!help \u2029x",
+      "!help\u000Bx",
+      "!roll 2\t6",
+      "!h\u00E9llo",
+      "!hello w\u00F6rld");
+
+  private static final List<String> ARGUMENTS = ImmutableList.of(
+      "",
+      " ",
+      " 1",
+      " 1 2",
+      " 1  2 ",
+      "  1",
+      " 1,2",
+      " -1",
+      " +1",
+      " 0",
+      " -0",
+      " 017",
+      " 08",
+      " 0x1F",
+      " 0X1f",
+      " 0x",
+      " -0x10",
+      " #ff",
+      " -#ff",
+      " #",
+      " 2147483647",
+      " 2147483648",
+      " -2147483648",
+      " -2147483649",
+      " 0x7fffffff",
+      " 0x80000000",
+      " -0x80000000",
+      " 99999999999",
+      " 1.5",
+      " -1.5",
+      " .5",
+      " 5.",
+      " .",
+      " 1e3",
+      " 1E-3",
+      " 1.5e+10",
+      " 123456789012345",
+      " 1234567890123456",
+      " 12345678901234567890",
+      " 0.123456789012345",
+      " 1.1234567890123456789",
+      " 0.000000000000001",
+      " 9007199254740993",
+      " 1d",
+      " 1f",
+      " NaN",
+      " Infinity",
+      " -Infinity",
+      " 0x1p3",
+      " \u0661\u0662",
+      " 1 \u0661\u0662",
+      " a b c",
+      " a_b c",
+      " hello world ",
+      " 3 hello world",
+      " 1.5 2",
+      " 1 1.5");
+
+  private static final List<List<Class<?>>> SIGNATURES = ImmutableList.of(
+      ImmutableList.of(),
+      ImmutableList.of(String.class),
+      ImmutableList.of(Integer.class),
+      ImmutableList.of(Double.class),
+      ImmutableList.of(Integer.class, Integer.class),
+      ImmutableList.of(Integer.class, String.class),
+      ImmutableList.of(Double.class, Double.class),
+      ImmutableList.of(String.class, Integer.class, Double.class));
+
+  @Test
+  public void findsTheSameCommandsAsTheRegex() {
+    for (String content : COMMANDS) {
+      assertCommandParity(content);
+    }
+  }
+
+  @Test
+  public void parsesTheSameArgumentsAsSplitAndTheJdk() {
+    for (List<Class<?>> signature : SIGNATURES) {
+      for (String argument : ARGUMENTS) {
+        assertArgumentParity(signature, "!cmd" + argument);
+      }
+    }
+  }
+
+  @Test
+  public void parsesIntsLikeIntegerDecode() {
+    for (String argument : ARGUMENTS) {
+      String word = argument.trim();
+      assertEquals(word, decode(word), CommandParser.parseInt(word, 0, word.length()));
+    }
+  }
+
+  @Test
+  public void parsesDoublesLikeDoubleParseDouble() {
+    for (String argument : ARGUMENTS) {
+      String word = argument.trim();
+      assertEquals(word, parseDouble(word), CommandParser.parseDouble(word, 0, word.length()));
+    }
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; i++) {
+      String word = random.nextInt(10)
+          + "." + Long.toString(random.nextLong() & Long.MAX_VALUE).substring(random.nextInt(5));
+      assertEquals(word, parseDouble(word), CommandParser.parseDouble(word, 0, word.length()));
+    }
+  }
+
+  @Test
+  public void matchesTheOldParserOnRandomMessages() {
+    String alphabet = "!`\\sudo  aZ09_-+.,#xXeE\t\n\u2028\u00E9";
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; i++) {
+      StringBuilder content = new StringBuilder(random.nextBoolean() ? "!c" : "");
+      int length = random.nextInt(12);
+      for (int j = 0; j < length; j++) {
+        content.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      assertCommandParity(content.toString());
+      assertArgumentParity(SIGNATURES.get(random.nextInt(SIGNATURES.size())), content.toString());
+    }
+  }
+
+  private static void assertCommandParity(String content) {
+    Matcher matcher = IS_COMMAND.matcher(content);
+    String expected = matcher.matches() ? matcher.group(2) + "|" + matcher.group(3) : null;
+    assertEquals(content, expected, scanCommand(content));
+  }
+
+  private static void assertArgumentParity(List<Class<?>> signature, String content) {
+    Matcher matcher = IS_COMMAND.matcher(content);
+    if (!matcher.matches()) {
+      return;
+    }
+    String expected = String.valueOf(splitArguments(signature, matcher.group(3)));
+
+    Object[] values = new Object[signature.size()];
+    CommandParser.ArgumentParser[] parsers = signature.stream()
+        .map(CommandParserTest::getParser)
+        .toArray(CommandParser.ArgumentParser[]::new);
+    int start = CommandParser.findNameEnd(content, CommandParser.findCommandName(content));
+    boolean filled = CommandParser.fill(parsers, values, content, start);
+    String actual = String.valueOf(filled ? Arrays.asList(values) : null);
+
+    assertEquals(signature + " " + content, expected, actual);
+  }
+
+  /** Returns the command name and argument as the scanner sees them, or null. */
+  private static String scanCommand(String content) {
+    int nameStart = CommandParser.findCommandName(content);
+    int nameEnd = nameStart < 0 ? nameStart : CommandParser.findNameEnd(content, nameStart);
+    if (nameEnd <= nameStart || !CommandParser.isSingleLine(content, nameEnd)) {
+      return null;
+    }
+    return content.substring(nameStart, nameEnd) + "|" + content.substring(nameEnd);
+  }
+
+  /** Converts the arguments the way CommandInvoker did before the scanner, or returns null. */
+  private static List<Object> splitArguments(List<Class<?>> signature, String argument) {
+    if (argument.isEmpty() || signature.isEmpty()) {
+      return argument.isEmpty() && signature.isEmpty() ? ImmutableList.of() : null;
+    }
+    String[] args = argument.split("\\W+", signature.size());
+    if (args.length != signature.size()) {
+      return null;
+    }
+    Object[] values = new Object[args.length];
+    for (int i = 0; i < args.length; i++) {
+      values[i] = getConverter(signature.get(i)).apply(args[i]);
+      if (values[i] == null) {
+        return null;
+      }
+    }
+    return Arrays.asList(values);
+  }
+
+  private static Function<String, Object> getConverter(Class<?> type) {
+    if (type == Integer.class) {
+      return CommandParserTest::decode;
+    }
+    if (type == Double.class) {
+      return CommandParserTest::parseDouble;
+    }
+    return String::trim;
+  }
+
+  private static CommandParser.ArgumentParser getParser(Class<?> type) {
+    if (type == Integer.class) {
+      return CommandParser::parseInt;
+    }
+    if (type == Double.class) {
+      return CommandParser::parseDouble;
+    }
+    return CommandParser::parseString;
+  }
+
+  private static Integer decode(String word) {
+    try {
+      return Integer.decode(word);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static Double parseDouble(String word) {
+    try {
+      return Double.parseDouble(word);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package net.discordbot.util;
+
+import com.google.common.collect.ImmutableList;
+import org.ahocorasick.trie.Emit;
+import org.ahocorasick.trie.Trie;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public final class KeywordMatcherTest {
+
+  @Test
+  public void findsWholeWordsIgnoringCase() {
+    KeywordMatcher matcher = new KeywordMatcher(ImmutableList.of("cat", "hot dog", "dog"));
+
+    assertEquals(
+        ImmutableList.of("0@4", "1@13", "2@17"),
+        findAll(matcher, "the CAT, the hot DOG!"));
+    assertEquals(ImmutableList.of(), findAll(matcher, "concatenate cats hotdog"));
+  }
+
+  @Test
+  public void reportsDuplicateKeywordsWithTheirFirstId() {
+    KeywordMatcher matcher = new KeywordMatcher(ImmutableList.of("a", "b", "A"));
+
+    assertEquals(ImmutableList.of("0@0", "1@2"), findAll(matcher, "a b"));
+  }
+
+  @Test
+  public void stopsWhenTheVisitorSaysSo() {
+    KeywordMatcher matcher = new KeywordMatcher(ImmutableList.of("a"));
+    List<Integer> starts = new ArrayList<>();
+
+    matcher.forEachMatch("a a a", (keyword, start, end) -> starts.add(start) && false);
+
+    assertEquals(ImmutableList.of(0), starts);
+  }
+
+  @Test
+  public void prefersAKeywordThatSpansTheText() {
+    KeywordMatcher matcher = new KeywordMatcher(ImmutableList.of("hot", "hot dog", "dog"));
+    Random random = new Random(42);
+
+    for (int i = 0; i < 100; i++) {
+      assertEquals(1, matcher.findRandom("Hot Dog", random));
+    }
+    assertEquals(KeywordMatcher.NO_MATCH, matcher.findRandom("hotdogs", random));
+  }
+
+  @Test
+  public void picksMatchesUniformly() {
+    KeywordMatcher matcher = new KeywordMatcher(ImmutableList.of("a", "b", "c"));
+    Random random = new Random(42);
+    int[] counts = new int[3];
+
+    for (int i = 0; i < 30000; i++) {
+      counts[matcher.findRandom("a b c a", random)]++;
+    }
+
+    // "a" occurs twice, so it should be picked about half of the time.
+    assertEquals(0.5, counts[0] / 30000.0, 0.02);
+    assertEquals(0.25, counts[1] / 30000.0, 0.02);
+    assertEquals(0.25, counts[2] / 30000.0, 0.02);
+  }
+
+  @Test
+  public void agreesWithBruteForceOnRandomInputs() {
+    Random random = new Random(3);
+    for (int i = 0; i < 20000; i++) {
+      List<String> keywords = new ArrayList<>();
+      int keywordCount = 1 + random.nextInt(6);
+      for (int k = 0; k < keywordCount; k++) {
+        keywords.add(randomString(random, "abcB ", 1 + random.nextInt(4)));
+      }
+      String text = randomString(random, "abcAB  1", random.nextInt(20));
+
+      List<String> expected = findAllByBruteForce(keywords, text);
+      List<String> actual = findAll(new KeywordMatcher(keywords), text);
+      Collections.sort(expected);
+      Collections.sort(actual);
+      assertEquals(keywords + " in \"" + text + "\"", expected, actual);
+    }
+  }
+
+  @Test
+  public void agreesWithTheAhoCorasickTrieOnRandomInputs() {
+    Random random = new Random(5);
+    for (int i = 0; i < 20000; i++) {
+      // Meme keywords are lowercase, and the trie does not treat digits as part of words.
+      Set<String> distinctKeywords = new LinkedHashSet<>();
+      int keywordCount = 1 + random.nextInt(6);
+      for (int k = 0; k < keywordCount; k++) {
+        distinctKeywords.add(randomString(random, "abc' ", 1 + random.nextInt(4)));
+      }
+      List<String> keywords = ImmutableList.copyOf(distinctKeywords);
+      String text = randomString(random, "abcAB  ',.", random.nextInt(20));
+
+      Trie.TrieBuilder trieBuilder = Trie.builder().ignoreCase().onlyWholeWords();
+      keywords.forEach(trieBuilder::addKeyword);
+      List<String> expected = new ArrayList<>();
+      for (Emit emit : trieBuilder.build().parseText(text)) {
+        expected.add(keywords.indexOf(emit.getKeyword()) + "@" + emit.getStart());
+      }
+      List<String> actual = findAll(new KeywordMatcher(keywords), text);
+      Collections.sort(expected);
+      Collections.sort(actual);
+      assertEquals(keywords + " in \"" + text + "\"", expected, actual);
+    }
+  }
+
+  /** Returns every match as "keyword@start" in the order in which they are reported. */
+  private static List<String> findAll(KeywordMatcher matcher, String text) {
+    List<String> matches = new ArrayList<>();
+    matcher.forEachMatch(text, (keyword, start, end) -> matches.add(keyword + "@" + start));
+    return matches;
+  }
+
+  private static List<String> findAllByBruteForce(List<String> keywords, String text) {
+    List<String> matches = new ArrayList<>();
+    String lowercaseText = text.toLowerCase();
+    for (int keyword = 0; keyword < keywords.size(); keyword++) {
+      String lowercaseKeyword = keywords.get(keyword).toLowerCase();
+      if (firstIndexOf(keywords, lowercaseKeyword) != keyword) {
+        continue;
+      }
+      int start = lowercaseText.indexOf(lowercaseKeyword);
+      for (; start >= 0; start = lowercaseText.indexOf(lowercaseKeyword, start + 1)) {
+        int end = start + lowercaseKeyword.length();
+        boolean wholeWord = (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+            && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)));
+        if (wholeWord) {
+          matches.add(keyword + "@" + start);
+        }
+      }
+    }
+    return matches;
+  }
+
+  private static int firstIndexOf(List<String> keywords, String lowercaseKeyword) {
+    for (int i = 0; i < keywords.size(); i++) {
+      if (keywords.get(i).toLowerCase().equals(lowercaseKeyword)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String randomString(Random random, String alphabet, int length) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return text.toString();
+  }
+}